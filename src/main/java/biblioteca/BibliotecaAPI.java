@@ -4,6 +4,7 @@ import com.google.gson.Gson;
 import biblioteca.controllers.BibliotecaController;
 import biblioteca.models.ErrorResponse;
 import biblioteca.services.BibliotecaService;
+import observabilidad.eventos.Eventos;
 import spark.ResponseTransformer;
 
 import static spark.Spark.*;
@@ -11,9 +12,15 @@ import static spark.Spark.*;
 
 public class BibliotecaAPI {
 
-    private static Gson gson = new Gson();
-    private static BibliotecaService bibliotecaService = new BibliotecaService();
-    private static BibliotecaController bibliotecaController = new BibliotecaController(bibliotecaService, gson);
+    /**
+     * Dependencias de la API. Se crean la primera vez que se usan (idiom del holder),
+     * así registrar las rutas no paga la inicialización de Gson ni del servicio.
+     */
+    private static class Dependencias {
+        private static final Gson gson = new Gson();
+        private static final BibliotecaService bibliotecaService = new BibliotecaService();
+        private static final BibliotecaController bibliotecaController = new BibliotecaController(bibliotecaService, gson);
+    }
 
     public static void main(String[] args) {
         port(4567);
@@ -26,30 +33,47 @@ public class BibliotecaAPI {
      * Registra todas las rutas de la API
      */
     public static void configurarRutas() {
-        // Configurar ResponseTransformer para todas las respuestas JSON
-        ResponseTransformer jsonTransformer = gson::toJson;
-
-        // Configurar headers por defecto
-        before((req, res) -> res.type("application/json"));
-
-        // Rutas principales con ResponseTransformer usando el controlador
-        get("/libros", bibliotecaController::obtenerLibros, jsonTransformer);
-        get("/libros/buscar", bibliotecaController::buscarLibros, jsonTransformer);
-        get("/libros/:isbn", bibliotecaController::obtenerLibroPorIsbn, jsonTransformer);
-        post("/libros", bibliotecaController::crearLibro, jsonTransformer);
-        put("/libros/:isbn", bibliotecaController::actualizarLibro, jsonTransformer);
-        delete("/libros/:isbn", bibliotecaController::eliminarLibro, jsonTransformer);
+        registrarRutas("");
 
         // Manejo de rutas no encontradas
         notFound((req, res) -> {
             res.type("application/json");
-            return gson.toJson(new ErrorResponse("Ruta no encontrada"));
+            return Dependencias.gson.toJson(new ErrorResponse("Ruta no encontrada"));
         });
 
         // Manejo de errores internos
         internalServerError((req, res) -> {
             res.type("application/json");
-            return gson.toJson(new ErrorResponse("Error interno del servidor"));
+            return Dependencias.gson.toJson(new ErrorResponse("Error interno del servidor"));
+        });
+    }
+
+    /**
+     * Registra las rutas de la API bajo un prefijo, sin tocar los manejadores globales
+     * de errores. Lo usa el servidor unificado para montar varias APIs en una sola instancia.
+     * @param prefijo prefijo de las rutas (por ejemplo "/biblioteca"), o "" para la raíz
+     */
+    public static void registrarRutas(String prefijo) {
+        // Configurar ResponseTransformer para todas las respuestas JSON
+        ResponseTransformer jsonTransformer = model -> Eventos.aJson(Dependencias.gson, model);
+
+        path(prefijo, () -> {
+            // Configurar headers por defecto
+            before("/*", (req, res) -> res.type("application/json"));
+
+            // Rutas principales con ResponseTransformer usando el controlador; cada handler
+            // emite un evento de JFR por petición cuando hay una grabación activa
+            get("/libros", Eventos.medir((req, res) -> Dependencias.bibliotecaController.obtenerLibros(req, res)), jsonTransformer);
+            get("/libros/buscar", Eventos.medir((req, res) -> Dependencias.bibliotecaController.buscarLibros(req, res)), jsonTransformer);
+            get("/libros/autocompletar", Eventos.medir((req, res) -> Dependencias.bibliotecaController.autocompletar(req, res)), jsonTransformer);
+            get("/libros/cache", Eventos.medir((req, res) -> Dependencias.bibliotecaController.obtenerEstadisticasCache(req, res)), jsonTransformer);
+            get("/libros/:isbn", Eventos.medir((req, res) -> Dependencias.bibliotecaController.obtenerLibroPorIsbn(req, res)), jsonTransformer);
+            post("/libros", Eventos.medir((req, res) -> Dependencias.bibliotecaController.crearLibro(req, res)), jsonTransformer);
+            post("/libros/bulk", Eventos.medir((req, res) -> Dependencias.bibliotecaController.cargarLibros(req, res)), jsonTransformer);
+            // Escribe la respuesta en streaming, por eso no usa el ResponseTransformer
+            post("/libros/lookup", Eventos.medir((req, res) -> Dependencias.bibliotecaController.obtenerLibrosPorLote(req, res)));
+            put("/libros/:isbn", Eventos.medir((req, res) -> Dependencias.bibliotecaController.actualizarLibro(req, res)), jsonTransformer);
+            delete("/libros/:isbn", Eventos.medir((req, res) -> Dependencias.bibliotecaController.eliminarLibro(req, res)), jsonTransformer);
         });
     }
 }
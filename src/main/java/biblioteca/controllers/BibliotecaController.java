@@ -1,18 +1,47 @@
 package biblioteca.controllers;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import biblioteca.models.ErrorResponse;
+import biblioteca.models.EstadisticasCache;
 import biblioteca.models.Libro;
+import biblioteca.models.OrdenLibros;
+import biblioteca.models.PaginaLibros;
+import biblioteca.models.ResultadoCarga;
 import biblioteca.models.SuccessResponse;
+import biblioteca.models.Sugerencia;
 import biblioteca.services.BibliotecaService;
 import spark.Request;
 import spark.Response;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+import static spark.Spark.halt;
+
 public class BibliotecaController {
     
+    private static final int LIMITE_AUTOCOMPLETAR_POR_DEFECTO = 10;
+    private static final int LIMITE_AUTOCOMPLETAR_MAXIMO = 50;
+    private static final int LIMITE_BUSQUEDA_POR_DEFECTO = 20;
+    private static final int LIMITE_BUSQUEDA_MAXIMO = 100;
+    private static final int OFFSET_BUSQUEDA_MAXIMO = 10_000;
+    
+    /** Máximo de ISBN por consulta en lote; configurable con -Dbiblioteca.lookup.maximo */
+    private static final int LOTE_MAXIMO = Integer.getInteger("biblioteca.lookup.maximo", 100);
+    
+    /** Tamaño máximo del cuerpo de una carga masiva; configurable con -Dbiblioteca.carga.maximoBytes */
+    private static final int CARGA_MAXIMA_BYTES = Integer.getInteger("biblioteca.carga.maximoBytes", 64 * 1024 * 1024);
+    
     private BibliotecaService bibliotecaService;
     private Gson gson;
     
@@ -22,31 +51,49 @@ public class BibliotecaController {
     }
     
     /**
-     * Obtiene todos los libros o filtra por autor
-     * @param req request de Spark
+     * Obtiene todos los libros o filtra por autor y rango de años, con orden y paginación opcionales
+     * @param req request de Spark con query params opcionales ?autor=, &anioDesde=, &anioHasta=,
+     *            &orden=anio|titulo, &limite= y &offset=
      * @param res response de Spark
      * @return lista de libros en JSON
      */
     public Object obtenerLibros(Request req, Response res) {
         String autor = req.queryParams("autor");
         
-        List<Libro> resultado;
+        int anioDesde;
+        int anioHasta;
+        int limite;
+        int offset;
+        OrdenLibros orden;
+        try {
+            anioDesde = parametroEntero(req, "anioDesde", Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            anioHasta = parametroEntero(req, "anioHasta", Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            limite = parametroEntero(req, "limite", Integer.MAX_VALUE, 1, Integer.MAX_VALUE);
+            offset = parametroEntero(req, "offset", 0, 0, Integer.MAX_VALUE);
+            orden = parametroOrden(req);
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            return new ErrorResponse(e.getMessage());
+        }
         
-        if (autor != null && !autor.isEmpty()) {
-            resultado = bibliotecaService.obtenerLibrosPorAutor(autor);
-        } else {
-            resultado = bibliotecaService.obtenerTodosLosLibros();
+        if (anioDesde > anioHasta) {
+            res.status(400);
+            return new ErrorResponse("Parámetro 'anioDesde' no puede ser mayor que 'anioHasta'");
         }
         
+        List<Libro> resultado = bibliotecaService.obtenerLibros(autor, anioDesde, anioHasta, orden, offset, limite);
+        
         res.status(200);
         return resultado;
     }
     
     /**
-     * Obtiene un libro específico por ISBN
+     * Obtiene un libro específico por ISBN.
+     * Devuelve la versión en la cabecera ETag; si la cabecera If-None-Match coincide con
+     * ella responde 304 sin cuerpo.
      * @param req request de Spark con parámetro :isbn
      * @param res response de Spark
-     * @return libro en JSON o error 404
+     * @return libro en JSON, 304 o error 404
      */
     public Object obtenerLibroPorIsbn(Request req, Response res) {
         String isbn = req.params(":isbn");
@@ -54,6 +101,11 @@ public class BibliotecaController {
         Optional<Libro> libro = bibliotecaService.obtenerLibroPorIsbn(isbn);
         
         if (libro.isPresent()) {
+            String etag = etag(libro.get());
+            res.header("ETag", etag);
+            if (coincideEtag(req.headers("If-None-Match"), etag)) {
+                halt(304);
+            }
             res.status(200);
             return libro.get();
         } else {
@@ -62,6 +114,67 @@ public class BibliotecaController {
         }
     }
     
+    /**
+     * Obtiene varios libros por ISBN en una sola petición.
+     * El cuerpo es un array JSON de ISBN; se lee y se responde en streaming, sin construir
+     * el documento completo en memoria. Devuelve directamente el JSON (la ruta no usa el
+     * ResponseTransformer): {"encontrados": [libros], "faltantes": [isbn]}
+     * @param req request de Spark con body JSON (array de ISBN)
+     * @param res response de Spark
+     * @return cadena vacía (el cuerpo ya se escribió) o un error en JSON
+     */
+    public Object obtenerLibrosPorLote(Request req, Response res) {
+        List<String> isbns = new ArrayList<>();
+        
+        try (JsonReader lector = new JsonReader(new InputStreamReader(req.raw().getInputStream(), StandardCharsets.UTF_8))) {
+            lector.beginArray();
+            while (lector.hasNext()) {
+                if (isbns.size() == LOTE_MAXIMO) {
+                    res.status(413);
+                    return gson.toJson(new ErrorResponse("Se permiten como máximo " + LOTE_MAXIMO + " ISBN por consulta"));
+                }
+                if (lector.peek() != JsonToken.STRING) {
+                    res.status(400);
+                    return gson.toJson(new ErrorResponse("Cada elemento del array debe ser un ISBN en texto"));
+                }
+                isbns.add(lector.nextString());
+            }
+            lector.endArray();
+        } catch (IOException | IllegalStateException | JsonParseException e) {
+            res.status(400);
+            return gson.toJson(new ErrorResponse("JSON inválido: se esperaba un array de ISBN"));
+        }
+        
+        res.status(200);
+        try {
+            JsonWriter escritor = new JsonWriter(new OutputStreamWriter(res.raw().getOutputStream(), StandardCharsets.UTF_8));
+            List<String> faltantes = new ArrayList<>();
+            
+            escritor.beginObject();
+            escritor.name("encontrados").beginArray();
+            for (String isbn : isbns) {
+                Optional<Libro> libro = bibliotecaService.obtenerLibroPorIsbn(isbn);
+                if (libro.isPresent()) {
+                    gson.toJson(libro.get(), Libro.class, escritor);
+                } else {
+                    faltantes.add(isbn);
+                }
+            }
+            escritor.endArray();
+            
+            escritor.name("faltantes").beginArray();
+            for (String isbn : faltantes) {
+                escritor.value(isbn);
+            }
+            escritor.endArray();
+            escritor.endObject();
+            escritor.flush();
+        } catch (IOException e) {
+            // El cliente cerró la conexión: no hay a quién responder
+        }
+        return "";
+    }
+    
     /**
      * Crea un nuevo libro
      * @param req request de Spark con body JSON
@@ -74,6 +187,7 @@ public class BibliotecaController {
             Libro libroCreado = bibliotecaService.crearLibro(nuevoLibro);
             
             res.status(201);
+            res.header("ETag", etag(libroCreado));
             return libroCreado;
             
         } catch (IllegalArgumentException e) {
@@ -86,21 +200,69 @@ public class BibliotecaController {
     }
     
     /**
-     * Actualiza un libro existente
-     * @param req request de Spark con parámetro :isbn y body JSON
+     * Carga libros en bloque. El body es JSON Lines: un libro en JSON por línea.
+     * Las líneas inválidas se rechazan y se informan sin detener la carga. Un cuerpo de más
+     * de {@code biblioteca.carga.maximoBytes} bytes se rechaza con 413.
+     * @param req request de Spark con body JSON Lines
      * @param res response de Spark
-     * @return libro actualizado en JSON o error 404
+     * @return resumen de la carga en JSON
+     */
+    public Object cargarLibros(Request req, Response res) {
+        if (req.raw().getContentLengthLong() > CARGA_MAXIMA_BYTES) {
+            res.status(413);
+            return new ErrorResponse("El cuerpo de una carga admite como máximo " + CARGA_MAXIMA_BYTES + " bytes");
+        }
+        
+        // Sin Content-Length (chunked) el límite se comprueba al leer, sin pasar de él
+        byte[] datos;
+        try {
+            datos = leerCuerpo(req, CARGA_MAXIMA_BYTES);
+        } catch (IOException e) {
+            res.status(400);
+            return new ErrorResponse("No se pudo leer el cuerpo: " + e.getMessage());
+        }
+        if (datos == null) {
+            res.status(413);
+            return new ErrorResponse("El cuerpo de una carga admite como máximo " + CARGA_MAXIMA_BYTES + " bytes");
+        }
+        
+        if (datos.length == 0) {
+            res.status(400);
+            return new ErrorResponse("El cuerpo debe contener libros en JSON, uno por línea");
+        }
+        
+        ResultadoCarga resultado = bibliotecaService.cargarLibros(datos);
+        
+        res.status(200);
+        return resultado;
+    }
+    
+    /**
+     * Actualiza un libro existente.
+     * Si viene la cabecera If-Match, solo se actualiza cuando coincide con la versión
+     * actual (ETag); si no coincide responde 412 con la versión actual en ETag.
+     * @param req request de Spark con parámetro :isbn, body JSON y cabecera If-Match opcional
+     * @param res response de Spark
+     * @return libro actualizado en JSON, error 404 o error 412
      */
     public Object actualizarLibro(Request req, Response res) {
         String isbn = req.params(":isbn");
         
         try {
             Libro libroActualizado = gson.fromJson(req.body(), Libro.class);
-            Libro resultado = bibliotecaService.actualizarLibro(isbn, libroActualizado);
+            Long versionEsperada = versionEsperada(req.headers("If-Match"));
+            Libro resultado = bibliotecaService.actualizarLibro(isbn, libroActualizado, versionEsperada);
             
             res.status(200);
+            res.header("ETag", etag(resultado));
             return resultado;
             
+        } catch (BibliotecaService.PrecondicionFallidaException e) {
+            res.status(412);
+            if (e.getVersionActual() > 0) {
+                res.header("ETag", "\"" + e.getVersionActual() + "\"");
+            }
+            return new ErrorResponse(e.getMessage());
         } catch (IllegalArgumentException e) {
             res.status(e.getMessage().contains("no encontrado") ? 404 : 400);
             return new ErrorResponse(e.getMessage());
@@ -132,10 +294,11 @@ public class BibliotecaController {
     }
     
     /**
-     * Busca libros por título (búsqueda parcial)
-     * @param req request de Spark con query param ?q=
+     * Busca libros por texto libre en título y autor, ordenados por relevancia.
+     * El total de coincidencias se devuelve en la cabecera X-Total-Count.
+     * @param req request de Spark con query param ?q= y opcionales &limite= y &offset=
      * @param res response de Spark
-     * @return lista de libros que coinciden
+     * @return página de libros que coinciden
      */
     public Object buscarLibros(Request req, Response res) {
         String query = req.queryParams("q");
@@ -145,9 +308,177 @@ public class BibliotecaController {
             return new ErrorResponse("Parámetro 'q' es requerido para la búsqueda");
         }
         
-        List<Libro> resultados = bibliotecaService.buscarLibrosPorTitulo(query);
+        int limite;
+        int offset;
+        try {
+            limite = parametroEntero(req, "limite", LIMITE_BUSQUEDA_POR_DEFECTO, 1, LIMITE_BUSQUEDA_MAXIMO);
+            offset = parametroEntero(req, "offset", 0, 0, OFFSET_BUSQUEDA_MAXIMO);
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            return new ErrorResponse(e.getMessage());
+        }
+        
+        PaginaLibros pagina = bibliotecaService.buscarLibros(query, offset, limite);
         
         res.status(200);
-        return resultados;
+        res.header("X-Total-Count", String.valueOf(pagina.getTotal()));
+        return pagina.getLibros();
+    }
+    
+    /**
+     * Sugiere títulos y autores que empiezan por un prefijo
+     * @param req request de Spark con query params ?prefijo= y opcional &limite=
+     * @param res response de Spark
+     * @return lista de sugerencias
+     */
+    public Object autocompletar(Request req, Response res) {
+        String prefijo = req.queryParams("prefijo");
+        
+        if (prefijo == null || prefijo.isEmpty()) {
+            res.status(400);
+            return new ErrorResponse("Parámetro 'prefijo' es requerido");
+        }
+        
+        int limite;
+        try {
+            limite = parametroEntero(req, "limite", LIMITE_AUTOCOMPLETAR_POR_DEFECTO, 1, LIMITE_AUTOCOMPLETAR_MAXIMO);
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            return new ErrorResponse(e.getMessage());
+        }
+        
+        List<Sugerencia> sugerencias = bibliotecaService.autocompletar(prefijo, limite);
+        
+        res.status(200);
+        return sugerencias;
+    }
+    
+    /**
+     * @return la versión del libro como ETag fuerte, por ejemplo {@code "3"}. Las versiones
+     *         no se repiten en todo el catálogo, así que el ETag identifica también el libro
+     *         aunque su ISBN se haya borrado y vuelto a crear
+     */
+    private String etag(Libro libro) {
+        return "\"" + libro.getVersion() + "\"";
+    }
+    
+    /**
+     * Comprueba si una cabecera If-None-Match (lista de ETags o *) incluye el ETag dado.
+     * Los ETags débiles (W/) se comparan por su valor.
+     */
+    private boolean coincideEtag(String cabecera, String etag) {
+        if (cabecera == null) {
+            return false;
+        }
+        for (String candidato : cabecera.split(",")) {
+            candidato = candidato.trim();
+            if (candidato.startsWith("W/")) {
+                candidato = candidato.substring(2);
+            }
+            if (candidato.equals("*") || candidato.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Convierte la cabecera If-Match en la versión esperada
+     * @param cabecera valor de If-Match ({@code "N"}), o null
+     * @return la versión, o null si no hay cabecera o es *
+     * @throws BibliotecaService.PrecondicionFallidaException si no es un ETag de este servicio
+     */
+    private Long versionEsperada(String cabecera) {
+        if (cabecera == null || cabecera.trim().equals("*")) {
+            return null;
+        }
+        String valor = cabecera.trim();
+        if (valor.length() > 2 && valor.startsWith("\"") && valor.endsWith("\"")) {
+            try {
+                return Long.parseLong(valor.substring(1, valor.length() - 1));
+            } catch (NumberFormatException e) {
+                // Se trata abajo como un ETag desconocido
+            }
+        }
+        throw new BibliotecaService.PrecondicionFallidaException("If-Match no coincide con ninguna versión: " + valor, 0);
+    }
+    
+    /**
+     * Obtiene las métricas de la caché de consultas (tasa de aciertos, expulsiones, ocupación)
+     * @param req request de Spark
+     * @param res response de Spark
+     * @return estadísticas de la caché en JSON
+     */
+    public Object obtenerEstadisticasCache(Request req, Response res) {
+        EstadisticasCache estadisticas = bibliotecaService.estadisticasCache();
+        
+        res.status(200);
+        return estadisticas;
+    }
+    
+    /**
+     * Lee el cuerpo de la petición sin pasar de un máximo de bytes. Lee directamente de la
+     * petición de Jetty: el envoltorio de Spark copiaría el cuerpo entero antes de devolverlo.
+     * @param req request de Spark
+     * @param maximo número máximo de bytes
+     * @return el cuerpo, o null si ocupa más del máximo
+     * @throws IOException si falla la lectura
+     */
+    private static byte[] leerCuerpo(Request req, int maximo) throws IOException {
+        org.eclipse.jetty.server.Request base = org.eclipse.jetty.server.Request.getBaseRequest(req.raw());
+        InputStream entrada = base != null ? base.getInputStream() : req.raw().getInputStream();
+        byte[] datos = entrada.readNBytes(maximo);
+        return entrada.read() == -1 ? datos : null;
+    }
+    
+    /**
+     * Lee un query param entero opcional
+     * @param req request de Spark
+     * @param nombre nombre del parámetro
+     * @param porDefecto valor si el parámetro no viene
+     * @param minimo valor mínimo permitido
+     * @param maximo valor máximo permitido
+     * @return el valor del parámetro
+     * @throws IllegalArgumentException si no es un número o está fuera de rango
+     */
+    private int parametroEntero(Request req, String nombre, int porDefecto, int minimo, int maximo) {
+        String valor = req.queryParams(nombre);
+        if (valor == null || valor.isEmpty()) {
+            return porDefecto;
+        }
+        
+        int numero;
+        try {
+            numero = Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parámetro '" + nombre + "' inválido: debe ser un número");
+        }
+        
+        if (numero < minimo || numero > maximo) {
+            throw new IllegalArgumentException("Parámetro '" + nombre + "' debe estar entre " + minimo + " y " + maximo);
+        }
+        return numero;
+    }
+    
+    /**
+     * Lee el query param opcional 'orden'
+     * @param req request de Spark
+     * @return el orden pedido, o null si no viene
+     * @throws IllegalArgumentException si el valor no es 'anio' ni 'titulo'
+     */
+    private OrdenLibros parametroOrden(Request req) {
+        String valor = req.queryParams("orden");
+        if (valor == null || valor.isEmpty()) {
+            return null;
+        }
+        
+        switch (valor.toLowerCase()) {
+            case "anio":
+                return OrdenLibros.ANIO;
+            case "titulo":
+                return OrdenLibros.TITULO;
+            default:
+                throw new IllegalArgumentException("Parámetro 'orden' inválido: use 'anio' o 'titulo'");
+        }
     }
 }
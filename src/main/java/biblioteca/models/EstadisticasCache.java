@@ -0,0 +1,48 @@
+package biblioteca.models;
+
+public class EstadisticasCache {
+    private long aciertos;
+    private long fallos;
+    private double tasaAciertos;
+    private long expulsiones;
+    private long invalidaciones;
+    private int entradas;
+    private long peso;
+    private long pesoMaximo;
+
+    public EstadisticasCache(long aciertos, long fallos, long expulsiones, long invalidaciones,
+                             int entradas, long peso, long pesoMaximo) {
+        this.aciertos = aciertos;
+        this.fallos = fallos;
+        this.tasaAciertos = aciertos + fallos == 0 ? 0.0 : (double) aciertos / (aciertos + fallos);
+        this.expulsiones = expulsiones;
+        this.invalidaciones = invalidaciones;
+        this.entradas = entradas;
+        this.peso = peso;
+        this.pesoMaximo = pesoMaximo;
+    }
+
+    public long getAciertos() { return aciertos; }
+    public void setAciertos(long aciertos) { this.aciertos = aciertos; }
+
+    public long getFallos() { return fallos; }
+    public void setFallos(long fallos) { this.fallos = fallos; }
+
+    public double getTasaAciertos() { return tasaAciertos; }
+    public void setTasaAciertos(double tasaAciertos) { this.tasaAciertos = tasaAciertos; }
+
+    public long getExpulsiones() { return expulsiones; }
+    public void setExpulsiones(long expulsiones) { this.expulsiones = expulsiones; }
+
+    public long getInvalidaciones() { return invalidaciones; }
+    public void setInvalidaciones(long invalidaciones) { this.invalidaciones = invalidaciones; }
+
+    public int getEntradas() { return entradas; }
+    public void setEntradas(int entradas) { this.entradas = entradas; }
+
+    public long getPeso() { return peso; }
+    public void setPeso(long peso) { this.peso = peso; }
+
+    public long getPesoMaximo() { return pesoMaximo; }
+    public void setPesoMaximo(long pesoMaximo) { this.pesoMaximo = pesoMaximo; }
+}
@@ -5,6 +5,7 @@ public class Libro {
     private String titulo;
     private String autor;
     private int anio;
+    private long version;
 
     public Libro() {}
 
@@ -26,4 +27,7 @@ public class Libro {
 
     public int getAnio() { return anio; }
     public void setAnio(int anio) { this.anio = anio; }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
 }
@@ -0,0 +1,6 @@
+package biblioteca.models;
+
+public enum OrdenLibros {
+    ANIO,
+    TITULO
+}
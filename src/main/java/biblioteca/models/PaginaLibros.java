@@ -0,0 +1,19 @@
+package biblioteca.models;
+
+import java.util.List;
+
+public class PaginaLibros {
+    private List<Libro> libros;
+    private int total;
+
+    public PaginaLibros(List<Libro> libros, int total) {
+        this.libros = libros;
+        this.total = total;
+    }
+
+    public List<Libro> getLibros() { return libros; }
+    public void setLibros(List<Libro> libros) { this.libros = libros; }
+
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+}
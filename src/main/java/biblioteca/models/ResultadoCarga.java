@@ -0,0 +1,39 @@
+package biblioteca.models;
+
+import java.util.List;
+
+public class ResultadoCarga {
+    private int cargados;
+    private int rechazados;
+    private int totalLibros;
+    private long milisegundos;
+    private int hilos;
+    private List<String> errores;
+
+    public ResultadoCarga(int cargados, int rechazados, int totalLibros, long milisegundos, int hilos, List<String> errores) {
+        this.cargados = cargados;
+        this.rechazados = rechazados;
+        this.totalLibros = totalLibros;
+        this.milisegundos = milisegundos;
+        this.hilos = hilos;
+        this.errores = errores;
+    }
+
+    public int getCargados() { return cargados; }
+    public void setCargados(int cargados) { this.cargados = cargados; }
+
+    public int getRechazados() { return rechazados; }
+    public void setRechazados(int rechazados) { this.rechazados = rechazados; }
+
+    public int getTotalLibros() { return totalLibros; }
+    public void setTotalLibros(int totalLibros) { this.totalLibros = totalLibros; }
+
+    public long getMilisegundos() { return milisegundos; }
+    public void setMilisegundos(long milisegundos) { this.milisegundos = milisegundos; }
+
+    public int getHilos() { return hilos; }
+    public void setHilos(int hilos) { this.hilos = hilos; }
+
+    public List<String> getErrores() { return errores; }
+    public void setErrores(List<String> errores) { this.errores = errores; }
+}
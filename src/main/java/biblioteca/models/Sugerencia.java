@@ -0,0 +1,22 @@
+package biblioteca.models;
+
+public class Sugerencia {
+    private String texto;
+    private String tipo;
+    private String isbn;
+
+    public Sugerencia(String texto, String tipo, String isbn) {
+        this.texto = texto;
+        this.tipo = tipo;
+        this.isbn = isbn;
+    }
+
+    public String getTexto() { return texto; }
+    public void setTexto(String texto) { this.texto = texto; }
+
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+
+    public String getIsbn() { return isbn; }
+    public void setIsbn(String isbn) { this.isbn = isbn; }
+}
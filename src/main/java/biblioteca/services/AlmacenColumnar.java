@@ -0,0 +1,1159 @@
+package biblioteca.services;
+
+import biblioteca.models.Libro;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Almacén del catálogo fuera del heap, en formato columnar.
+ *
+ * Cada libro tiene un ordinal fijo mientras existe, con dos columnas:
+ * - isbn:     ISBN-13 canónico ({@code long}, 0 = ordinal libre)
+ * - registro: posición de sus datos + 1 ({@code int})
+ *
+ * Los datos ocupan una posición en columnas de ancho fijo:
+ * - anio:    año de publicación ({@code int})
+ * - version: versión del libro para el control de concurrencia optimista ({@code long})
+ * - textos:  desplazamiento y longitud del ISBN original, el título y el autor
+ *            dentro de la arena ({@code 6 x int})
+ * - arena:   los textos en UTF-8, uno detrás de otro
+ *
+ * Las columnas son {@code ByteBuffer} directos o, si se indica un archivo, mapeados a
+ * archivo: en ese caso el catálogo sobrevive a un reinicio y al abrirlo solo se reconstruye
+ * la tabla hash recorriendo la columna de ISBN, sin volver a analizar ningún texto. Los
+ * {@link Libro} se construyen únicamente para los registros que se devuelven; los índices se
+ * reconstruyen con {@link #recorrer}, que pasa los campos sin crear objetos {@code Libro}.
+ *
+ * En el heap solo quedan la tabla hash de ordinales ({@code int[]}, la clave se lee de la
+ * columna de ISBN) y las listas de ordinales y posiciones libres. Cada escritura guarda los
+ * datos en una posición nueva y sus textos al final de la arena, y después apunta el
+ * ordinal a ella. Cada columna está limitada a 2 GB (índices {@code int} de
+ * {@code ByteBuffer}).
+ *
+ * Los textos de los registros sustituidos o borrados quedan muertos en la arena. Cuando
+ * los bytes muertos pasan de 1 MB y superan a los vivos, o la arena llegaría al límite de
+ * 2 GB, se compacta: los textos vivos se copian a una arena nueva y se reescriben sus
+ * desplazamientos, con el bloqueo exclusivo y solo si no hay escrituras a medias. Cada
+ * compactación cuesta O(bytes vivos) y llega después de al menos otros tantos bytes
+ * muertos, así que su coste por escritura es constante. En un almacén persistente la
+ * arena, los textos y meta compactados se escriben en {@code <archivo>.compacta.*} y se
+ * publican con una marca y renombrados, como una carga masiva.
+ *
+ * Concurrencia: las lecturas son optimistas con un {@link StampedLock}, como en
+ * {@link TablaLibros}, y los textos se decodifican después de validar (lo escrito en una
+ * arena no cambia; la compactación escribe en otra).
+ * {@link #calcular} serializa las escrituras de una misma clave con un bloqueo por franja
+ * de claves y aplica la función sin ningún bloqueo del almacén; el bloqueo exclusivo solo
+ * se toma para reservar una posición y para confirmarla, nunca mientras se escriben los
+ * datos o se fuerzan a disco. Los recorridos siguen los ordinales, así que una clave que
+ * existe durante todo el recorrido aparece exactamente una vez.
+ *
+ * Durabilidad (almacén persistente): los datos de la posición nueva se fuerzan a disco
+ * antes de apuntar el ordinal a ella (una escritura de 4 bytes), y el registro de un
+ * ordinal nuevo antes de escribir su ISBN. Una posición o un ordinal liberados no se
+ * reutilizan hasta que el cambio que los liberó está en disco, así que tras un corte cada
+ * ordinal con ISBN apunta a datos completos.
+ */
+class AlmacenColumnar implements AlmacenLibros {
+
+    private static final int MAGICO = 0x4C494252; // "LIBR"
+    private static final int VERSION_FORMATO = 2;
+    private static final int BYTES_META = 20;
+
+    private static final int BYTES_ISBN = 8;
+    private static final int BYTES_REGISTRO = 4;
+    private static final int BYTES_ANIO = 4;
+    private static final int BYTES_VERSION = 8;
+    private static final int BYTES_TEXTOS = 24;
+
+    private static final int CAPACIDAD_INICIAL = 1024;
+    private static final int ARENA_INICIAL = 64 * 1024;
+
+    private static final int FRANJAS = 64;
+    /** Ordinales que se copian por cada lectura consistente en los recorridos */
+    private static final int LOTE = 256;
+    /** Resultado de buscarOrdinal cuando una lectura optimista vio un estado a medio escribir */
+    private static final int INCONSISTENTE = -2;
+
+    /** Extensiones de los archivos de un almacén persistente; meta va al final al sustituir */
+    private static final String[] EXTENSIONES = {".isbn", ".registro", ".anio", ".version", ".textos", ".arena", ".meta"};
+    /** Sufijo de los archivos donde se construye una carga masiva */
+    private static final String CARGA = ".carga";
+    /** Marca de que los archivos de una carga están completos en disco y deben publicarse */
+    private static final String CARGA_LISTA = ".carga.lista";
+    /** Sufijo de los archivos donde se escribe una compactación de la arena */
+    private static final String COMPACTA = ".compacta";
+    /** Marca de que los archivos de una compactación están completos en disco */
+    private static final String COMPACTA_LISTA = ".compacta.lista";
+    /** Bytes muertos de la arena por debajo de los cuales no se compacta */
+    private static final int MINIMO_COMPACTAR = 1 << 20;
+
+    private final StampedLock lock = new StampedLock();
+    private final ReentrantLock[] bloqueosClave = new ReentrantLock[FRANJAS];
+
+    /** Ruta base de los archivos, o null si el almacén está en memoria directa */
+    private String archivo;
+    /** Si es true, cada escritura se fuerza a disco antes de terminar */
+    private volatile boolean sincronizar;
+
+    /** Meta, textos y arena se sustituyen al compactar la arena */
+    private Columna meta;
+    private final Columna isbns;
+    private final Columna registros;
+    private final Columna anios;
+    private final Columna versiones;
+    private Columna textos;
+    private Columna arena;
+
+    /** Ordinales usados (incluidos los libres intermedios) */
+    private int ordinales;
+    /** Posiciones de datos usadas (incluidas las libres intermedias) */
+    private int posiciones;
+    private int bytesArena;
+    /** Bytes de la arena con textos de registros apuntados por algún ordinal */
+    private long bytesVivos;
+    /** Escrituras entre la reserva de su posición y su confirmación; no se compacta con ninguna */
+    private int escriturasEnCurso;
+    private volatile int tamanio;
+
+    /** Tabla hash: ordinal + 1, o 0 si está vacía. La clave se lee de la columna de ISBN */
+    private int[] tabla;
+    private final Libres ordinalesLibres = new Libres();
+    private final Libres posicionesLibres = new Libres();
+
+    /**
+     * Crea un almacén en memoria directa (fuera del heap, sin persistencia)
+     */
+    AlmacenColumnar() {
+        crearBloqueos();
+        this.meta = new Columna(null, BYTES_META);
+        this.isbns = new Columna(null, CAPACIDAD_INICIAL * BYTES_ISBN);
+        this.registros = new Columna(null, CAPACIDAD_INICIAL * BYTES_REGISTRO);
+        this.anios = new Columna(null, CAPACIDAD_INICIAL * BYTES_ANIO);
+        this.versiones = new Columna(null, CAPACIDAD_INICIAL * BYTES_VERSION);
+        this.textos = new Columna(null, CAPACIDAD_INICIAL * BYTES_TEXTOS);
+        this.arena = new Columna(null, ARENA_INICIAL);
+        this.tabla = new int[CAPACIDAD_INICIAL * 2];
+        escribirMeta();
+    }
+
+    /**
+     * Abre (o crea) un almacén persistente mapeado a archivos con el prefijo indicado:
+     * {@code <archivo>.meta}, {@code .isbn}, {@code .registro}, {@code .anio},
+     * {@code .version}, {@code .textos} y {@code .arena}. Si una carga masiva quedó a medio
+     * publicar, primero termina de publicarla.
+     * @param archivo ruta base de los archivos
+     * @throws UncheckedIOException si no se pueden abrir o el formato no es válido
+     */
+    AlmacenColumnar(String archivo) {
+        this(archivo, true);
+    }
+
+    /**
+     * @param sincronizar si es false, las escrituras no se fuerzan a disco (lo usa la carga
+     *                    masiva, que fuerza todo de una vez al publicar)
+     */
+    private AlmacenColumnar(String archivo, boolean sincronizar) {
+        completarCarga(archivo);
+        completarCompactacion(archivo);
+        crearBloqueos();
+        this.archivo = archivo;
+        this.sincronizar = sincronizar;
+        this.meta = new Columna(Paths.get(archivo + ".meta"), BYTES_META);
+        this.isbns = new Columna(Paths.get(archivo + ".isbn"), CAPACIDAD_INICIAL * BYTES_ISBN);
+        this.registros = new Columna(Paths.get(archivo + ".registro"), CAPACIDAD_INICIAL * BYTES_REGISTRO);
+        this.anios = new Columna(Paths.get(archivo + ".anio"), CAPACIDAD_INICIAL * BYTES_ANIO);
+        this.versiones = new Columna(Paths.get(archivo + ".version"), CAPACIDAD_INICIAL * BYTES_VERSION);
+        this.textos = new Columna(Paths.get(archivo + ".textos"), CAPACIDAD_INICIAL * BYTES_TEXTOS);
+        this.arena = new Columna(Paths.get(archivo + ".arena"), ARENA_INICIAL);
+
+        ByteBuffer cabecera = meta.buffer;
+        int bytesArenaGuardados = 0;
+        if (cabecera.getInt(0) == MAGICO) {
+            if (cabecera.getInt(4) != VERSION_FORMATO) {
+                throw new UncheckedIOException(new IOException(
+                        "Versión de formato no soportada en " + archivo + ": " + cabecera.getInt(4)));
+            }
+            bytesArenaGuardados = cabecera.getInt(16);
+        }
+        reconstruirTabla(bytesArenaGuardados);
+        escribirMeta();
+        if (sincronizar) {
+            forzarTodo();
+            sincronizarDirectorio(Paths.get(archivo));
+        }
+    }
+
+    @Override
+    public Libro obtener(long clave) {
+        Registro registro = buscarRegistro(clave);
+        return registro == null ? null : registro.libro();
+    }
+
+    @Override
+    public String titulo(long clave) {
+        Registro registro = buscarRegistro(clave);
+        return registro == null ? null : registro.texto(1);
+    }
+
+    @Override
+    public String autor(long clave) {
+        Registro registro = buscarRegistro(clave);
+        return registro == null ? null : registro.texto(2);
+    }
+
+    @Override
+    public Libro calcular(long clave, UnaryOperator<Libro> funcion) {
+        ReentrantLock bloqueo = bloqueosClave[(int) (mezclar(clave) >>> 58)];
+        bloqueo.lock();
+        try {
+            Libro actual = obtener(clave);
+            Libro nuevo = funcion.apply(actual);
+            if (nuevo != null && nuevo != actual) {
+                guardarRegistro(clave, nuevo);
+            } else if (nuevo == null && actual != null) {
+                borrarRegistro(clave);
+            }
+            return nuevo;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    @Override
+    public List<Libro> valores() {
+        List<Libro> libros = new ArrayList<>(tamanio);
+        recorrerLotes(true, lote -> {
+            for (int i = 0; i < lote.cantidad; i++) {
+                libros.add(lote.registros[i].libro());
+            }
+            return true;
+        });
+        return libros;
+    }
+
+    @Override
+    public void recorrerClaves(LongPredicate visitante) {
+        recorrerLotes(false, lote -> {
+            for (int i = 0; i < lote.cantidad; i++) {
+                if (!visitante.test(lote.claves[i])) return false;
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void recorrer(VisitanteCampos visitante) {
+        recorrerLotes(true, lote -> {
+            for (int i = 0; i < lote.cantidad; i++) {
+                Registro registro = lote.registros[i];
+                visitante.visitar(registro.clave, registro.texto(1), registro.texto(2), registro.anio, registro.version);
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public int tamanio() {
+        return tamanio;
+    }
+
+    @Override
+    public boolean fueraDelHeap() {
+        return true;
+    }
+
+    /**
+     * Un almacén persistente crea el nuevo en {@code <archivo>.carga.*}, sin forzar cada
+     * escritura a disco; al sustituir al anterior, {@link #sustituir} lo fuerza y lo mueve
+     * a los archivos de éste.
+     */
+    @Override
+    public AlmacenLibros crearVacio() {
+        if (archivo == null) {
+            return new AlmacenColumnar();
+        }
+        String carga = archivo + CARGA;
+        try {
+            for (String extension : EXTENSIONES) {
+                Files.deleteIfExists(Paths.get(carga + extension));
+                Files.deleteIfExists(Paths.get(carga + COMPACTA + extension));
+            }
+            Files.deleteIfExists(Paths.get(carga + COMPACTA_LISTA));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudieron borrar los restos de una carga anterior", e);
+        }
+        return new AlmacenColumnar(carga, false);
+    }
+
+    /**
+     * Fuerza este almacén a disco y renombra sus archivos sobre los del anterior. Antes de
+     * renombrar se crea {@code <archivo>.carga.lista}: si el proceso se interrumpe a mitad,
+     * al abrir el almacén se terminan los renombrados pendientes en lugar de quedar una
+     * mezcla de los dos. Los archivos ya mapeados siguen siendo válidos, así que los
+     * lectores que aún usen el almacén anterior no se ven afectados.
+     */
+    @Override
+    public void sustituir(AlmacenLibros anterior) {
+        if (archivo == null || !(anterior instanceof AlmacenColumnar)) return;
+        String destino = ((AlmacenColumnar) anterior).archivo;
+        if (destino == null || !archivo.equals(destino + CARGA)) return;
+
+        long stamp = lock.writeLock();
+        try {
+            escribirMeta();
+            forzarTodo();
+
+            Path lista = Paths.get(destino + CARGA_LISTA);
+            try (FileChannel marca = FileChannel.open(lista, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                marca.force(true);
+            }
+            sincronizarDirectorio(lista);
+            moverArchivos(destino, CARGA);
+            Files.delete(lista);
+
+            archivo = destino;
+            sincronizar = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo publicar el almacén cargado en " + destino, e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Cierra los archivos. Las columnas mapeadas siguen siendo legibles hasta que se liberan.
+     */
+    @Override
+    public void cerrar() {
+        long stamp = lock.writeLock();
+        try {
+            for (Columna columna : columnas()) {
+                columna.cerrar();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Escribe los datos de un libro en una posición nueva y apunta a ella el ordinal de su clave
+     */
+    private void guardarRegistro(long clave, Libro libro) {
+        byte[][] campos = {
+            libro.getIsbn().getBytes(StandardCharsets.UTF_8),
+            libro.getTitulo().getBytes(StandardCharsets.UTF_8),
+            libro.getAutor().getBytes(StandardCharsets.UTF_8)
+        };
+        long bytes = (long) campos[0].length + campos[1].length + campos[2].length;
+        boolean forzar = sincronizar;
+
+        // 1. Reservar la posición y el sitio en la arena
+        int posicion;
+        int inicio;
+        long stamp = lock.writeLock();
+        try {
+            if (debeCompactar(bytes)) {
+                compactarArena();
+            }
+            arena.asegurar(bytesArena + bytes);
+            inicio = bytesArena;
+            bytesArena += (int) bytes;
+            posicion = reservarPosicion();
+            escriturasEnCurso++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        int anterior = -1;
+        boolean completada = false;
+        try {
+            anterior = escribirYConfirmar(clave, libro, posicion, inicio, campos, bytes, forzar);
+            completada = true;
+        } finally {
+            // 4. Ningún ordinal apunta ya a la posición anterior, tampoco en disco
+            stamp = lock.writeLock();
+            try {
+                escriturasEnCurso--;
+                if (completada && anterior >= 0) {
+                    posicionesLibres.agregar(anterior);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Pasos 2 y 3 de {@link #guardarRegistro}: escribe los datos en la posición reservada
+     * y apunta a ella el ordinal de la clave
+     * @return la posición a la que apuntaba antes el ordinal, o -1 si la clave era nueva
+     */
+    private int escribirYConfirmar(long clave, Libro libro, int posicion, int inicio, byte[][] campos,
+                                   long bytes, boolean forzar) {
+        // 2. Escribir los datos. Nadie lee aún esa posición ni esa parte de la arena; el
+        //    bloqueo compartido solo impide que otra escritura amplíe las columnas a la vez
+        long stamp = lock.readLock();
+        try {
+            escribir(posicion, inicio, campos, libro.getAnio(), libro.getVersion());
+            if (forzar) {
+                arena.forzar();
+                textos.forzar();
+                anios.forzar();
+                versiones.forzar();
+            }
+        } catch (RuntimeException e) {
+            lock.unlockRead(stamp);
+            stamp = 0;
+            liberar(posicionesLibres, posicion);
+            throw e;
+        } finally {
+            if (stamp != 0) lock.unlockRead(stamp);
+        }
+
+        // 3. Confirmar: apuntar el ordinal de la clave a la posición nueva
+        int ordinal;
+        int anterior = -1;
+        boolean nueva;
+        stamp = lock.writeLock();
+        try {
+            ordinal = buscarOrdinal(clave);
+            nueva = ordinal < 0;
+            if (nueva) {
+                ordinal = reservarOrdinal();
+            } else {
+                anterior = registros.buffer.getInt(ordinal * BYTES_REGISTRO) - 1;
+                bytesVivos -= bytesTextos(anterior);
+            }
+            registros.buffer.putInt(ordinal * BYTES_REGISTRO, posicion + 1);
+            bytesVivos += bytes;
+            if (nueva && !forzar) {
+                publicar(ordinal, clave);
+            }
+            escribirMeta();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (forzar) {
+            stamp = lock.readLock();
+            try {
+                registros.forzar();
+                meta.forzar();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+
+            // Un ordinal nuevo recibe su ISBN cuando su registro ya está en disco
+            if (nueva) {
+                stamp = lock.writeLock();
+                try {
+                    publicar(ordinal, clave);
+                } finally {
+                    lock.unlockWrite(stamp);
+                }
+                stamp = lock.readLock();
+                try {
+                    isbns.forzar();
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+        }
+        return anterior;
+    }
+
+    private void borrarRegistro(long clave) {
+        boolean forzar = sincronizar;
+        int ordinal;
+        int posicion;
+        long stamp = lock.writeLock();
+        try {
+            ordinal = buscarOrdinal(clave);
+            if (ordinal < 0) return;
+            quitarDeTabla(clave);
+            isbns.buffer.putLong(ordinal * BYTES_ISBN, 0L);
+            tamanio--;
+            posicion = registros.buffer.getInt(ordinal * BYTES_REGISTRO) - 1;
+            bytesVivos -= bytesTextos(posicion);
+            if (!forzar) {
+                ordinalesLibres.agregar(ordinal);
+                posicionesLibres.agregar(posicion);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (!forzar) return;
+
+        // El ordinal y su posición se reutilizan cuando el borrado está en disco
+        stamp = lock.readLock();
+        try {
+            isbns.forzar();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = lock.writeLock();
+        try {
+            ordinalesLibres.agregar(ordinal);
+            posicionesLibres.agregar(posicion);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Da a un ordinal su ISBN y lo agrega a la tabla. Se llama con el bloqueo exclusivo.
+     */
+    private void publicar(int ordinal, long clave) {
+        isbns.buffer.putLong(ordinal * BYTES_ISBN, clave);
+        insertarEnTabla(ordinal, clave);
+        tamanio++;
+    }
+
+    private void liberar(Libres libres, int valor) {
+        long stamp = lock.writeLock();
+        try {
+            libres.agregar(valor);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Lee el registro de una clave con una lectura optimista y, si coincide con una
+     * escritura, con el bloqueo de lectura
+     * @return el registro, o null si la clave no existe
+     */
+    private Registro buscarRegistro(long clave) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int ordinal = buscarOrdinal(clave);
+            Registro registro = ordinal >= 0 ? leer(ordinal, clave) : null;
+            boolean consistente = ordinal != INCONSISTENTE && (ordinal < 0 || registro != null);
+            if (lock.validate(stamp) && consistente) {
+                return registro;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            int ordinal = buscarOrdinal(clave);
+            return ordinal < 0 ? null : leerValido(ordinal, clave);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Lee las columnas de un ordinal sin decodificar los textos. Puede ejecutarse con una
+     * lectura optimista: los buffers se leen una vez y todo acceso se comprueba antes
+     * @return el registro, o null si los valores leídos no son coherentes
+     */
+    private Registro leer(int ordinal, long clave) {
+        ByteBuffer r = registros.buffer;
+        if ((ordinal + 1L) * BYTES_REGISTRO > r.capacity()) {
+            return null;
+        }
+        int posicion = r.getInt(ordinal * BYTES_REGISTRO) - 1;
+
+        ByteBuffer t = textos.buffer;
+        ByteBuffer a = anios.buffer;
+        ByteBuffer v = versiones.buffer;
+        ByteBuffer ar = arena.buffer;
+        long siguiente = posicion + 1L;
+        if (posicion < 0 || siguiente * BYTES_TEXTOS > t.capacity() || siguiente * BYTES_ANIO > a.capacity()
+                || siguiente * BYTES_VERSION > v.capacity()) {
+            return null;
+        }
+
+        Registro registro = new Registro(clave, posicion, ar);
+        int base = posicion * BYTES_TEXTOS;
+        for (int k = 0; k < 6; k++) {
+            registro.textos[k] = t.getInt(base + k * 4);
+        }
+        for (int k = 0; k < 6; k += 2) {
+            int desplazamiento = registro.textos[k];
+            int longitud = registro.textos[k + 1];
+            if (desplazamiento < 0 || longitud < 0 || (long) desplazamiento + longitud > ar.capacity()) {
+                return null;
+            }
+        }
+        registro.anio = a.getInt(posicion * BYTES_ANIO);
+        registro.version = v.getLong(posicion * BYTES_VERSION);
+        return registro;
+    }
+
+    private Registro leerValido(int ordinal, long clave) {
+        Registro registro = leer(ordinal, clave);
+        if (registro == null) {
+            throw new IllegalStateException("Registro dañado en el ordinal " + ordinal + " del almacén columnar");
+        }
+        return registro;
+    }
+
+    /**
+     * Recorre los ordinales ocupados en lotes: cada lote se copia de forma consistente
+     * (lectura optimista o bloqueo de lectura) y se entrega fuera de cualquier bloqueo
+     * @param conCampos si es true, el lote incluye los registros además de las claves
+     * @param consumidor recibe cada lote; devuelve false para terminar
+     */
+    private void recorrerLotes(boolean conCampos, Predicate<Lote> consumidor) {
+        Lote lote = new Lote(conCampos);
+        int desde = 0;
+        while (desde >= 0) {
+            long stamp = lock.tryOptimisticRead();
+            boolean consistente = stamp != 0 && llenar(lote, desde);
+            if (!lock.validate(stamp) || !consistente) {
+                stamp = lock.readLock();
+                try {
+                    if (!llenar(lote, desde)) {
+                        throw new IllegalStateException("Registro dañado en el almacén columnar");
+                    }
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (!consumidor.test(lote)) return;
+            desde = lote.siguiente;
+        }
+    }
+
+    /**
+     * Llena un lote con los ordinales ocupados a partir de {@code desde}
+     * @return false si se leyó un estado a medio escribir
+     */
+    private boolean llenar(Lote lote, int desde) {
+        lote.cantidad = 0;
+        ByteBuffer columnaIsbn = isbns.buffer;
+        int hasta = Math.min(ordinales, columnaIsbn.capacity() / BYTES_ISBN);
+        int ordinal = desde;
+        for (; ordinal < hasta && lote.cantidad < LOTE; ordinal++) {
+            long clave = columnaIsbn.getLong(ordinal * BYTES_ISBN);
+            if (clave == 0) continue;
+
+            if (lote.registros != null) {
+                Registro registro = leer(ordinal, clave);
+                if (registro == null) return false;
+                lote.registros[lote.cantidad] = registro;
+            }
+            lote.claves[lote.cantidad++] = clave;
+        }
+        lote.siguiente = ordinal < hasta ? ordinal : -1;
+        return true;
+    }
+
+    /**
+     * Escribe los datos de un libro en una posición reservada y sus textos en la parte
+     * reservada de la arena
+     */
+    private void escribir(int posicion, int inicio, byte[][] campos, int anio, long version) {
+        ByteBuffer vista = arena.buffer.duplicate();
+        vista.position(inicio);
+        int base = posicion * BYTES_TEXTOS;
+        int desplazamiento = inicio;
+        for (int k = 0; k < campos.length; k++) {
+            vista.put(campos[k]);
+            textos.buffer.putInt(base + k * 8, desplazamiento);
+            textos.buffer.putInt(base + k * 8 + 4, campos[k].length);
+            desplazamiento += campos[k].length;
+        }
+        anios.buffer.putInt(posicion * BYTES_ANIO, anio);
+        versiones.buffer.putLong(posicion * BYTES_VERSION, version);
+    }
+
+    private int reservarOrdinal() {
+        if (ordinalesLibres.cantidad > 0) {
+            return ordinalesLibres.tomar();
+        }
+        int ordinal = ordinales++;
+        isbns.asegurar((long) ordinales * BYTES_ISBN);
+        registros.asegurar((long) ordinales * BYTES_REGISTRO);
+        return ordinal;
+    }
+
+    private int reservarPosicion() {
+        if (posicionesLibres.cantidad > 0) {
+            return posicionesLibres.tomar();
+        }
+        int posicion = posiciones++;
+        anios.asegurar((long) posiciones * BYTES_ANIO);
+        versiones.asegurar((long) posiciones * BYTES_VERSION);
+        textos.asegurar((long) posiciones * BYTES_TEXTOS);
+        return posicion;
+    }
+
+    /**
+     * @param bytes bytes que va a ocupar en la arena la escritura que la reserva
+     * @return true si hay que compactar la arena antes de reservar. Se llama con el bloqueo
+     *         exclusivo
+     */
+    private boolean debeCompactar(long bytes) {
+        long muertos = bytesArena - bytesVivos;
+        if (escriturasEnCurso > 0 || muertos <= 0) {
+            return false;
+        }
+        return (muertos > MINIMO_COMPACTAR && muertos > bytesVivos) || bytesArena + bytes > Integer.MAX_VALUE;
+    }
+
+    /**
+     * Copia a una arena nueva los textos de los registros apuntados por algún ordinal y
+     * reescribe sus desplazamientos en una columna de textos nueva. Se llama con el bloqueo
+     * exclusivo y sin escrituras en curso, así que ninguna posición está a medio escribir.
+     * Los lectores que ya copiaron un registro siguen leyendo la arena anterior, que no
+     * cambia. En un almacén persistente los archivos nuevos se fuerzan a disco y se
+     * renombran sobre los anteriores tras crear la marca {@code <archivo>.compacta.lista}.
+     */
+    private void compactarArena() {
+        String compacta = archivo == null ? null : archivo + COMPACTA;
+        try {
+            if (compacta != null) {
+                for (String extension : EXTENSIONES) {
+                    Files.deleteIfExists(Paths.get(compacta + extension));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudieron borrar los restos de una compactación anterior", e);
+        }
+
+        Columna nuevaArena = new Columna(compacta == null ? null : Paths.get(compacta + ".arena"),
+                (int) Math.max(ARENA_INICIAL, bytesVivos));
+        Columna nuevosTextos = new Columna(compacta == null ? null : Paths.get(compacta + ".textos"),
+                textos.buffer.capacity());
+        Columna nuevaMeta = new Columna(compacta == null ? null : Paths.get(compacta + ".meta"), BYTES_META);
+
+        ByteBuffer todosLosTextos = textos.buffer.duplicate();
+        todosLosTextos.clear();
+        nuevosTextos.buffer.duplicate().put(todosLosTextos);
+
+        ByteBuffer destino = nuevaArena.buffer.duplicate();
+        int usados = 0;
+        for (int ordinal = 0; ordinal < ordinales; ordinal++) {
+            if (isbns.buffer.getLong(ordinal * BYTES_ISBN) == 0) continue;
+
+            int base = (registros.buffer.getInt(ordinal * BYTES_REGISTRO) - 1) * BYTES_TEXTOS;
+            for (int k = 0; k < 3; k++) {
+                int desplazamiento = textos.buffer.getInt(base + k * 8);
+                int longitud = textos.buffer.getInt(base + k * 8 + 4);
+                ByteBuffer campo = arena.buffer.duplicate();
+                campo.limit(desplazamiento + longitud);
+                campo.position(desplazamiento);
+                destino.put(campo);
+                nuevosTextos.buffer.putInt(base + k * 8, usados);
+                usados += longitud;
+            }
+        }
+
+        int antes = bytesArena;
+        Columna[] anteriores = {arena, textos, meta};
+        arena = nuevaArena;
+        textos = nuevosTextos;
+        meta = nuevaMeta;
+        bytesArena = usados;
+        escribirMeta();
+
+        if (compacta != null) {
+            // Los canales siguen abiertos sobre los archivos renombrados
+            arena.forzar();
+            textos.forzar();
+            meta.forzar();
+            Path lista = Paths.get(archivo + COMPACTA_LISTA);
+            try {
+                try (FileChannel marca = FileChannel.open(lista, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    marca.force(true);
+                }
+                sincronizarDirectorio(lista);
+                moverArchivos(archivo, COMPACTA);
+                Files.delete(lista);
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo publicar la arena compactada en " + archivo, e);
+            }
+        }
+        for (Columna columna : anteriores) {
+            columna.cerrar();
+        }
+        System.out.println("Almacén columnar: arena compactada de " + antes + " a " + usados + " bytes");
+    }
+
+    /**
+     * @return bytes que ocupan en la arena los textos de una posición
+     */
+    private int bytesTextos(int posicion) {
+        int base = posicion * BYTES_TEXTOS;
+        return textos.buffer.getInt(base + 4) + textos.buffer.getInt(base + 12) + textos.buffer.getInt(base + 20);
+    }
+
+    private void escribirMeta() {
+        ByteBuffer cabecera = meta.buffer;
+        cabecera.putInt(0, MAGICO);
+        cabecera.putInt(4, VERSION_FORMATO);
+        cabecera.putInt(8, ordinales);
+        cabecera.putInt(12, posiciones);
+        cabecera.putInt(16, bytesArena);
+    }
+
+    private Columna[] columnas() {
+        return new Columna[] {isbns, registros, anios, versiones, textos, arena, meta};
+    }
+
+    private void forzarTodo() {
+        for (Columna columna : columnas()) {
+            columna.forzar();
+        }
+    }
+
+    /**
+     * Reconstruye la tabla hash y las listas de libres a partir de la columna de ISBN. Meta
+     * solo orienta: se recorre la columna entera y se marcan las posiciones a las que apunta
+     * algún ordinal; las demás quedan libres.
+     * @param bytesArenaGuardados bytes usados de la arena según meta
+     */
+    private void reconstruirTabla(int bytesArenaGuardados) {
+        ByteBuffer columnaIsbn = isbns.buffer;
+        int capacidad = Math.min(columnaIsbn.capacity() / BYTES_ISBN, registros.buffer.capacity() / BYTES_REGISTRO);
+        ordinales = 0;
+        for (int ordinal = 0; ordinal < capacidad; ordinal++) {
+            if (columnaIsbn.getLong(ordinal * BYTES_ISBN) != 0) {
+                ordinales = ordinal + 1;
+            }
+        }
+
+        tabla = new int[Math.max(CAPACIDAD_INICIAL * 2, Integer.highestOneBit(Math.max(ordinales, 1)) * 4)];
+        tamanio = 0;
+        bytesArena = bytesArenaGuardados;
+        bytesVivos = 0;
+        BitSet usadas = new BitSet();
+        for (int ordinal = 0; ordinal < ordinales; ordinal++) {
+            long clave = columnaIsbn.getLong(ordinal * BYTES_ISBN);
+            if (clave == 0) {
+                ordinalesLibres.agregar(ordinal);
+                continue;
+            }
+
+            Registro registro = leer(ordinal, clave);
+            if (registro == null || usadas.get(registro.posicion) || buscarOrdinal(clave) >= 0) {
+                throw new UncheckedIOException(new IOException(
+                        "Registro dañado en el ordinal " + ordinal + " de " + archivo));
+            }
+            usadas.set(registro.posicion);
+            for (int k = 0; k < 6; k += 2) {
+                bytesArena = Math.max(bytesArena, registro.textos[k] + registro.textos[k + 1]);
+                bytesVivos += registro.textos[k + 1];
+            }
+            insertarEnTabla(ordinal, clave);
+            tamanio++;
+        }
+
+        posiciones = usadas.length();
+        for (int posicion = usadas.nextClearBit(0); posicion < posiciones; posicion = usadas.nextClearBit(posicion + 1)) {
+            posicionesLibres.agregar(posicion);
+        }
+    }
+
+    /**
+     * Busca el ordinal de una clave. Puede ejecutarse con una lectura optimista: la tabla
+     * se lee una vez y el sondeo está acotado
+     * @return el ordinal, -1 si no está o {@link #INCONSISTENTE}
+     */
+    private int buscarOrdinal(long clave) {
+        int[] t = tabla;
+        ByteBuffer columnaIsbn = isbns.buffer;
+        int mascara = t.length - 1;
+        int i = indiceIdeal(clave, mascara);
+        for (int sondeos = 0; sondeos < t.length; sondeos++) {
+            int entrada = t[i];
+            if (entrada == 0) {
+                return -1;
+            }
+            if (entrada < 0 || (long) entrada * BYTES_ISBN > columnaIsbn.capacity()) {
+                return INCONSISTENTE;
+            }
+            if (columnaIsbn.getLong((entrada - 1) * BYTES_ISBN) == clave) {
+                return entrada - 1;
+            }
+            i = (i + 1) & mascara;
+        }
+        return -1;
+    }
+
+    private void insertarEnTabla(int ordinal, long clave) {
+        // Factor de carga máximo 0.5
+        if ((tamanio + 1) * 2 > tabla.length) {
+            int[] anterior = tabla;
+            tabla = new int[anterior.length * 2];
+            for (int entrada : anterior) {
+                if (entrada != 0) {
+                    colocar(entrada, isbns.buffer.getLong((entrada - 1) * BYTES_ISBN));
+                }
+            }
+        }
+        colocar(ordinal + 1, clave);
+    }
+
+    private void colocar(int entrada, long clave) {
+        int mascara = tabla.length - 1;
+        int i = indiceIdeal(clave, mascara);
+        while (tabla[i] != 0) {
+            i = (i + 1) & mascara;
+        }
+        tabla[i] = entrada;
+    }
+
+    private void quitarDeTabla(long clave) {
+        int mascara = tabla.length - 1;
+        int i = indiceIdeal(clave, mascara);
+        while (isbns.buffer.getLong((tabla[i] - 1) * BYTES_ISBN) != clave) {
+            i = (i + 1) & mascara;
+        }
+
+        // Borrado con desplazamiento hacia atrás, igual que en TablaLibros
+        int hueco = i;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mascara;
+            int entrada = tabla[j];
+            if (entrada == 0) break;
+            int ideal = indiceIdeal(isbns.buffer.getLong((entrada - 1) * BYTES_ISBN), mascara);
+            boolean mover = hueco <= j ? (ideal <= hueco || ideal > j) : (ideal <= hueco && ideal > j);
+            if (mover) {
+                tabla[hueco] = entrada;
+                hueco = j;
+            }
+        }
+        tabla[hueco] = 0;
+    }
+
+    private void crearBloqueos() {
+        for (int i = 0; i < FRANJAS; i++) {
+            bloqueosClave[i] = new ReentrantLock();
+        }
+    }
+
+    private static long mezclar(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static int indiceIdeal(long clave, int mascara) {
+        return (int) mezclar(clave) & mascara;
+    }
+
+    /**
+     * Termina de publicar una carga masiva interrumpida: si existe la marca de carga lista,
+     * sus archivos ya están completos en disco y se mueven sobre los del almacén
+     */
+    private static void completarCarga(String archivo) {
+        Path lista = Paths.get(archivo + CARGA_LISTA);
+        if (!Files.exists(lista)) return;
+        try {
+            moverArchivos(archivo, CARGA);
+            Files.delete(lista);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo completar la carga pendiente en " + archivo, e);
+        }
+        System.out.println("Almacén columnar: completada la publicación interrumpida de una carga en " + archivo);
+    }
+
+    /**
+     * Termina de publicar una compactación de la arena interrumpida, igual que
+     * {@link #completarCarga}
+     */
+    private static void completarCompactacion(String archivo) {
+        Path lista = Paths.get(archivo + COMPACTA_LISTA);
+        if (!Files.exists(lista)) return;
+        try {
+            moverArchivos(archivo, COMPACTA);
+            Files.delete(lista);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo completar la compactación pendiente en " + archivo, e);
+        }
+        System.out.println("Almacén columnar: completada la publicación interrumpida de una compactación en " + archivo);
+    }
+
+    /**
+     * Mueve los archivos {@code <destino><sufijo>.*} que queden sobre los de {@code destino}
+     * (meta al final)
+     */
+    private static void moverArchivos(String destino, String sufijo) throws IOException {
+        for (String extension : EXTENSIONES) {
+            Path origen = Paths.get(destino + sufijo + extension);
+            if (Files.exists(origen)) {
+                Files.move(origen, Paths.get(destino + extension),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        sincronizarDirectorio(Paths.get(destino));
+    }
+
+    /**
+     * Fuerza a disco el directorio de un archivo (archivos creados y renombrados). Si el
+     * sistema no permite abrir un directorio, no hace nada.
+     */
+    private static void sincronizarDirectorio(Path archivo) {
+        Path directorio = archivo.toAbsolutePath().getParent();
+        try (FileChannel canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException e) {
+            // Sin soporte en esta plataforma: los renombrados quedan a cargo del sistema de archivos
+        }
+    }
+
+    /**
+     * Los datos de un libro copiados en el heap. Los textos se decodifican cuando se piden,
+     * fuera de cualquier bloqueo: lo escrito en una arena no cambia y la compactación escribe
+     * en otra, así que el registro conserva la que leyó.
+     */
+    private static final class Registro {
+        final long clave;
+        final int posicion;
+        final ByteBuffer arena;
+        /** Desplazamiento y longitud del ISBN original, el título y el autor */
+        final int[] textos = new int[6];
+        int anio;
+        long version;
+
+        Registro(long clave, int posicion, ByteBuffer arena) {
+            this.clave = clave;
+            this.posicion = posicion;
+            this.arena = arena;
+        }
+
+        /**
+         * @param campo 0 = ISBN original, 1 = título, 2 = autor
+         */
+        String texto(int campo) {
+            byte[] bytes = new byte[textos[campo * 2 + 1]];
+            ByteBuffer vista = arena.duplicate();
+            vista.position(textos[campo * 2]);
+            vista.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Libro libro() {
+            Libro libro = new Libro(texto(0), texto(1), texto(2), anio);
+            libro.setVersion(version);
+            return libro;
+        }
+    }
+
+    /**
+     * Ordinales copiados en un paso de un recorrido
+     */
+    private static final class Lote {
+        final long[] claves = new long[LOTE];
+        final Registro[] registros;
+        int cantidad;
+        /** Ordinal donde sigue el recorrido, o -1 si terminó */
+        int siguiente;
+
+        Lote(boolean conCampos) {
+            this.registros = conCampos ? new Registro[LOTE] : null;
+        }
+    }
+
+    /**
+     * Pila de ordinales o posiciones libres
+     */
+    private static final class Libres {
+        private int[] valores = new int[16];
+        private int cantidad;
+
+        void agregar(int valor) {
+            if (cantidad == valores.length) {
+                valores = Arrays.copyOf(valores, valores.length * 2);
+            }
+            valores[cantidad++] = valor;
+        }
+
+        int tomar() {
+            return valores[--cantidad];
+        }
+    }
+
+    /**
+     * Una columna: un ByteBuffer directo o mapeado a archivo que crece duplicando su tamaño
+     */
+    private static final class Columna {
+        private final FileChannel canal;
+        private ByteBuffer buffer;
+
+        Columna(Path archivo, int capacidadInicial) {
+            try {
+                if (archivo == null) {
+                    this.canal = null;
+                    this.buffer = ByteBuffer.allocateDirect(capacidadInicial);
+                } else {
+                    this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    long capacidad = Math.max(canal.size(), capacidadInicial);
+                    this.buffer = mapear(capacidad);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo abrir " + archivo, e);
+            }
+        }
+
+        void asegurar(long bytes) {
+            if (bytes <= buffer.capacity()) return;
+            if (bytes > Integer.MAX_VALUE) {
+                throw new IllegalStateException("El almacén columnar superó el límite de 2 GB por columna");
+            }
+
+            long capacidad = Math.min(Math.max(bytes, (long) buffer.capacity() * 2), Integer.MAX_VALUE);
+            if (canal == null) {
+                ByteBuffer nuevo = ByteBuffer.allocateDirect((int) capacidad);
+                ByteBuffer anterior = buffer.duplicate();
+                anterior.clear();
+                nuevo.put(anterior);
+                buffer = nuevo;
+            } else {
+                try {
+                    // Mapear una región mayor amplía el archivo; el contenido ya está en él
+                    buffer = mapear(capacidad);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("No se pudo ampliar la columna", e);
+                }
+            }
+        }
+
+        /**
+         * Escribe en disco las páginas modificadas (no hace nada en memoria directa)
+         */
+        void forzar() {
+            if (buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) buffer).force();
+            }
+        }
+
+        void cerrar() {
+            if (canal == null) return;
+            try {
+                canal.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo cerrar la columna", e);
+            }
+        }
+
+        private MappedByteBuffer mapear(long capacidad) throws IOException {
+            return canal.map(FileChannel.MapMode.READ_WRITE, 0, capacidad);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package biblioteca.services;
+
+import biblioteca.models.Libro;
+
+import java.util.List;
+import java.util.function.LongPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Motor de almacenamiento del catálogo. Guarda los libros por su ISBN-13 canónico.
+ *
+ * Implementaciones:
+ * - {@link TablaLibros}: en memoria, objetos {@link Libro} en el heap (por defecto)
+ * - {@link AlmacenColumnar}: fuera del heap, en columnas sobre {@code ByteBuffer} directos
+ *   o mapeados a archivo
+ *
+ * Todas deben ser seguras para uso concurrente y aplicar {@link #calcular} de forma
+ * atómica respecto a otras escrituras de la misma clave. Los recorridos son vistas
+ * débilmente consistentes, como las de ConcurrentHashMap.
+ */
+public interface AlmacenLibros {
+
+    /**
+     * Recibe los campos que indexa el catálogo y la versión, sin construir un {@link Libro}
+     */
+    interface VisitanteCampos {
+        void visitar(long clave, String titulo, String autor, int anio, long version);
+    }
+
+    /**
+     * Obtiene el libro de una clave
+     * @param clave ISBN-13 canónico
+     * @return el libro, o null si no existe
+     */
+    Libro obtener(long clave);
+
+    /**
+     * Calcula el nuevo valor de una clave a partir del actual, de forma atómica respecto
+     * a otras escrituras de la misma clave (equivalente a {@code ConcurrentHashMap.compute}).
+     * @param clave ISBN-13 canónico
+     * @param funcion recibe el libro actual (o null) y devuelve el nuevo (o null para eliminarlo)
+     * @return el valor devuelto por la función
+     */
+    Libro calcular(long clave, UnaryOperator<Libro> funcion);
+
+    /**
+     * @return copia de todos los libros guardados
+     */
+    List<Libro> valores();
+
+    /**
+     * @return número de libros guardados
+     */
+    int tamanio();
+
+    /**
+     * Recorre las claves guardadas, en el orden del almacén, sin construir ningún {@link Libro}
+     * @param visitante recibe cada clave; devuelve false para terminar el recorrido
+     */
+    void recorrerClaves(LongPredicate visitante);
+
+    /**
+     * Recorre los libros guardados pasando solo los campos que indexa el catálogo y la versión
+     * @param visitante recibe los campos de cada libro
+     */
+    void recorrer(VisitanteCampos visitante);
+
+    /**
+     * @param clave ISBN-13 canónico
+     * @return el título guardado, o null si no existe
+     */
+    default String titulo(long clave) {
+        Libro libro = obtener(clave);
+        return libro == null ? null : libro.getTitulo();
+    }
+
+    /**
+     * @param clave ISBN-13 canónico
+     * @return el autor guardado, o null si no existe
+     */
+    default String autor(long clave) {
+        Libro libro = obtener(clave);
+        return libro == null ? null : libro.getAutor();
+    }
+
+    /**
+     * @return true si los libros se guardan fuera del heap (los índices del catálogo
+     *         también se crean fuera del heap)
+     */
+    default boolean fueraDelHeap() {
+        return false;
+    }
+
+    /**
+     * Crea un almacén vacío del mismo tipo y configuración, donde la carga masiva
+     * construye el catálogo nuevo antes de publicarlo
+     * @return almacén vacío
+     */
+    AlmacenLibros crearVacio();
+
+    /**
+     * Se llama al publicar este almacén en lugar de {@code anterior}. Los almacenes
+     * persistentes ocupan aquí el lugar del anterior; por defecto no hace nada.
+     * @param anterior almacén al que sustituye
+     */
+    default void sustituir(AlmacenLibros anterior) {
+    }
+
+    /**
+     * Libera los recursos del almacén (archivos abiertos) cuando deja de usarse. Los
+     * lectores que aún lo tengan pueden seguir leyéndolo; no admite más escrituras.
+     * Por defecto no hace nada.
+     */
+    default void cerrar() {
+    }
+}
@@ -0,0 +1,532 @@
+package biblioteca.services;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+
+/**
+ * Árbol B+ ordenado de entradas de ancho fijo (una o dos palabras {@code long}) con copia en
+ * escritura: cada modificación copia el camino de la raíz a la hoja y publica la raíz nueva
+ * en una referencia volátil. Las lecturas no toman bloqueos y trabajan sobre una
+ * {@link Vista}, que es una instantánea inmutable del árbol; las escrituras se serializan
+ * entre sí.
+ *
+ * Las hojas guardan las entradas en un {@link LongBuffer}; los nodos internos (uno por cada
+ * ~{@value #CAPACIDAD_INTERNO} hojas) quedan en el heap. Si el árbol se crea fuera del heap,
+ * las hojas de {@link #cargarOrdenadas} son trozos de bloques de memoria directa de
+ * {@value #HOJAS_POR_BLOQUE} hojas, y un bloque se libera cuando ya no queda ninguna de sus
+ * hojas. Las hojas que crea la copia en escritura son cortas y de vida breve, así que van al
+ * heap: reservar memoria directa para cada una costaría mucho más que copiarla. Cada nodo interno conoce el número de entradas de sus hijos, así que saltar a la
+ * posición n de un recorrido (el offset de una página) cuesta O(log n).
+ *
+ * El orden lo define quien llama con una {@link Sonda}: el árbol no interpreta las entradas.
+ * Un índice que se construye de una vez (una carga masiva, la apertura de un almacén) no
+ * inserta las entradas una a una: las ordena aparte y las carga con
+ * {@link #cargarOrdenadas}, que llena las hojas y sube nivel a nivel en O(n).
+ */
+final class ArbolOrdenado {
+
+    /**
+     * Compara una entrada del árbol con lo que se busca
+     */
+    interface Sonda {
+        /**
+         * @param primera primera palabra de la entrada
+         * @param segunda segunda palabra (0 si el ancho es 1)
+         * @return negativo, 0 o positivo si la entrada es menor, igual o mayor que lo buscado
+         */
+        int comparar(long primera, long segunda);
+    }
+
+    /**
+     * Recibe las entradas de un recorrido en orden
+     */
+    interface Visitante {
+        /**
+         * @param primera primera palabra de la entrada
+         * @param segunda segunda palabra (0 si el ancho es 1)
+         * @return false para terminar el recorrido
+         */
+        boolean visitar(long primera, long segunda);
+    }
+
+    private static final int CAPACIDAD_HOJA = 128;
+    private static final int CAPACIDAD_INTERNO = 64;
+    private static final int PROFUNDIDAD_MAXIMA = 16;
+    /** Hojas de cada bloque de memoria directa de {@link #cargarOrdenadas} */
+    private static final int HOJAS_POR_BLOQUE = 1024;
+
+    /** Resultado de {@link #eliminar} cuando la entrada no estaba */
+    private static final Nodo SIN_CAMBIOS = new Nodo(LongBuffer.allocate(0));
+
+    private final int ancho;
+    private final boolean fueraDelHeap;
+    private volatile Nodo raiz;
+
+    /**
+     * @param ancho palabras por entrada (1 o 2)
+     * @param fueraDelHeap si es true, las hojas de {@link #cargarOrdenadas} se guardan en
+     *                     memoria directa
+     */
+    ArbolOrdenado(int ancho, boolean fueraDelHeap) {
+        this.ancho = ancho;
+        this.fueraDelHeap = fueraDelHeap;
+        this.raiz = nuevaHoja();
+    }
+
+    /**
+     * Sustituye el contenido del árbol por unas entradas ya ordenadas: las hojas se llenan
+     * en orden y cada nivel interno se forma con los mínimos del anterior, sin comparar
+     * entradas. La raíz nueva se publica de una vez, como en cualquier escritura.
+     * @param datos entradas seguidas ({@code ancho} palabras cada una), en orden creciente
+     *              según las sondas con que se use el árbol y sin repetidas
+     * @param cantidad número de entradas
+     */
+    synchronized void cargarOrdenadas(long[] datos, int cantidad) {
+        int hojas = Math.max((cantidad + CAPACIDAD_HOJA - 1) / CAPACIDAD_HOJA, 1);
+        int bytesHoja = CAPACIDAD_HOJA * ancho * Long.BYTES;
+        Nodo[] nivel = new Nodo[hojas];
+        ByteBuffer bloque = null;
+        for (int h = 0; h < hojas; h++) {
+            int desde = h * CAPACIDAD_HOJA;
+            int n = Math.min(CAPACIDAD_HOJA, cantidad - desde);
+            Nodo hoja;
+            if (fueraDelHeap) {
+                if (h % HOJAS_POR_BLOQUE == 0) {
+                    bloque = ByteBuffer.allocateDirect(Math.min(HOJAS_POR_BLOQUE, hojas - h) * bytesHoja);
+                }
+                ByteBuffer trozo = bloque.duplicate();
+                trozo.position(h % HOJAS_POR_BLOQUE * bytesHoja);
+                trozo.limit(trozo.position() + bytesHoja);
+                hoja = new Nodo(trozo.slice().order(ByteOrder.nativeOrder()).asLongBuffer());
+            } else {
+                hoja = nuevaHoja();
+            }
+            hoja.entradas.duplicate().put(datos, desde * ancho, n * ancho);
+            hoja.cantidad = hoja.total = n;
+            nivel[h] = hoja;
+        }
+
+        while (nivel.length > 1) {
+            Nodo[] superior = new Nodo[(nivel.length + CAPACIDAD_INTERNO - 1) / CAPACIDAD_INTERNO];
+            for (int p = 0; p < superior.length; p++) {
+                int desde = p * CAPACIDAD_INTERNO;
+                Nodo nodo = nuevoInterno();
+                nodo.cantidad = Math.min(CAPACIDAD_INTERNO, nivel.length - desde);
+                for (int c = 0; c < nodo.cantidad; c++) {
+                    colocarHijo(nodo, c, nivel[desde + c]);
+                    nodo.total += nivel[desde + c].total;
+                }
+                superior[p] = nodo;
+            }
+            nivel = superior;
+        }
+        raiz = nivel[0];
+    }
+
+    /**
+     * @return instantánea del árbol para leerlo sin bloqueos
+     */
+    Vista vista() {
+        return new Vista(raiz);
+    }
+
+    /**
+     * Agrega una entrada; si ya hay una igual según la sonda, no hace nada
+     * @param primera primera palabra de la entrada
+     * @param segunda segunda palabra (se ignora si el ancho es 1)
+     * @param sonda compara las entradas del árbol con la nueva
+     */
+    synchronized void agregar(long primera, long segunda, Sonda sonda) {
+        Nodo[] resultado = insertar(raiz, primera, segunda, sonda);
+        if (resultado == null) return;
+
+        if (resultado[1] == null) {
+            raiz = resultado[0];
+        } else {
+            Nodo nueva = nuevoInterno();
+            colocarHijo(nueva, 0, resultado[0]);
+            colocarHijo(nueva, 1, resultado[1]);
+            nueva.cantidad = 2;
+            nueva.total = resultado[0].total + resultado[1].total;
+            raiz = nueva;
+        }
+    }
+
+    /**
+     * Quita la entrada igual a la sonda
+     * @param sonda compara las entradas del árbol con la que se quita
+     * @return true si estaba
+     */
+    synchronized boolean quitar(Sonda sonda) {
+        Nodo resultado = eliminar(raiz, sonda);
+        if (resultado == SIN_CAMBIOS) return false;
+
+        if (resultado == null) {
+            resultado = nuevaHoja();
+        }
+        while (!resultado.esHoja() && resultado.cantidad == 1) {
+            resultado = resultado.hijos[0];
+        }
+        raiz = resultado;
+        return true;
+    }
+
+    /**
+     * Una versión inmutable del árbol
+     */
+    final class Vista {
+        private final Nodo raiz;
+
+        private Vista(Nodo raiz) {
+            this.raiz = raiz;
+        }
+
+        /**
+         * @return número de entradas
+         */
+        int tamanio() {
+            return raiz.total;
+        }
+
+        /**
+         * @param sonda compara las entradas con lo buscado
+         * @return número de entradas menores que lo buscado (la posición de la primera
+         *         entrada mayor o igual)
+         */
+        int posicion(Sonda sonda) {
+            Nodo nodo = raiz;
+            int anteriores = 0;
+            while (!nodo.esHoja()) {
+                int c = hijoPara(sonda, nodo, true);
+                for (int i = 0; i < c; i++) {
+                    anteriores += nodo.hijos[i].total;
+                }
+                nodo = nodo.hijos[c];
+            }
+            return anteriores + cotaInferior(sonda, nodo);
+        }
+
+        /**
+         * Recorre las entradas en orden a partir de una posición
+         * @param desde posición de la primera entrada a visitar
+         * @param visitante recibe cada entrada
+         */
+        void recorrer(int desde, Visitante visitante) {
+            Nodo nodo = raiz;
+            if (desde < 0 || desde >= nodo.total) return;
+
+            Nodo[] pila = new Nodo[PROFUNDIDAD_MAXIMA];
+            int[] indices = new int[PROFUNDIDAD_MAXIMA];
+            int nivel = 0;
+            while (!nodo.esHoja()) {
+                int i = 0;
+                while (desde >= nodo.hijos[i].total) {
+                    desde -= nodo.hijos[i].total;
+                    i++;
+                }
+                pila[nivel] = nodo;
+                indices[nivel++] = i;
+                nodo = nodo.hijos[i];
+            }
+
+            int i = desde;
+            while (true) {
+                LongBuffer entradas = nodo.entradas;
+                for (; i < nodo.cantidad; i++) {
+                    long segunda = ancho == 2 ? entradas.get(i * 2 + 1) : 0;
+                    if (!visitante.visitar(entradas.get(i * ancho), segunda)) return;
+                }
+
+                // Subir hasta el primer nodo con un hijo siguiente y bajar por su primer hijo
+                while (nivel > 0 && indices[nivel - 1] + 1 >= pila[nivel - 1].cantidad) {
+                    nivel--;
+                }
+                if (nivel == 0) return;
+                nodo = pila[nivel - 1].hijos[++indices[nivel - 1]];
+                while (!nodo.esHoja()) {
+                    pila[nivel] = nodo;
+                    indices[nivel++] = 0;
+                    nodo = nodo.hijos[0];
+                }
+                i = 0;
+            }
+        }
+    }
+
+    /**
+     * @return null si la entrada ya estaba; si no, el nodo que sustituye a {@code nodo} y,
+     *         si se dividió, el hermano derecho
+     */
+    private Nodo[] insertar(Nodo nodo, long primera, long segunda, Sonda sonda) {
+        if (nodo.esHoja()) {
+            int i = cotaInferior(sonda, nodo);
+            if (i < nodo.cantidad && comparar(sonda, nodo, i) == 0) {
+                return null;
+            }
+            return insertarEnHoja(nodo, i, primera, segunda);
+        }
+
+        int c = hijoPara(sonda, nodo, false);
+        Nodo[] resultado = insertar(nodo.hijos[c], primera, segunda, sonda);
+        if (resultado == null) {
+            return null;
+        }
+        return reemplazarHijo(nodo, c, resultado[0], resultado[1]);
+    }
+
+    private Nodo[] insertarEnHoja(Nodo hoja, int i, long primera, long segunda) {
+        int n = hoja.cantidad + 1;
+        if (n <= CAPACIDAD_HOJA) {
+            Nodo nueva = nuevaHoja();
+            copiar(hoja, 0, i, nueva, 0);
+            escribir(nueva, i, primera, segunda);
+            copiar(hoja, i, hoja.cantidad, nueva, i + 1);
+            nueva.cantidad = nueva.total = n;
+            return new Nodo[] {nueva, null};
+        }
+
+        // Dividir en dos hojas a medio llenar
+        int mitad = n / 2;
+        Nodo izquierda = nuevaHoja();
+        Nodo derecha = nuevaHoja();
+        if (i < mitad) {
+            copiar(hoja, 0, i, izquierda, 0);
+            escribir(izquierda, i, primera, segunda);
+            copiar(hoja, i, mitad - 1, izquierda, i + 1);
+            copiar(hoja, mitad - 1, hoja.cantidad, derecha, 0);
+        } else {
+            copiar(hoja, 0, mitad, izquierda, 0);
+            copiar(hoja, mitad, i, derecha, 0);
+            escribir(derecha, i - mitad, primera, segunda);
+            copiar(hoja, i, hoja.cantidad, derecha, i - mitad + 1);
+        }
+        izquierda.cantidad = izquierda.total = mitad;
+        derecha.cantidad = derecha.total = n - mitad;
+        return new Nodo[] {izquierda, derecha};
+    }
+
+    /**
+     * Sustituye el hijo {@code c} tras una inserción (una entrada más en el subárbol) y,
+     * si el hijo se dividió, agrega el hermano a su derecha
+     */
+    private Nodo[] reemplazarHijo(Nodo nodo, int c, Nodo hijo, Nodo hermano) {
+        if (hermano == null) {
+            Nodo destino = copiarInterno(nodo);
+            destino.hijos[c] = hijo;
+            destino.total = nodo.total + 1;
+            return new Nodo[] {destino, null};
+        }
+
+        int n = nodo.cantidad + 1;
+        if (n <= CAPACIDAD_INTERNO) {
+            Nodo destino = copiarInterno(nodo);
+            int total = nodo.total + 1;
+            System.arraycopy(nodo.hijos, c + 1, destino.hijos, c + 2, nodo.cantidad - c - 1);
+            System.arraycopy(nodo.minimos, (c + 1) * ancho, destino.minimos, (c + 2) * ancho,
+                    (nodo.cantidad - c - 1) * ancho);
+            destino.hijos[c] = hijo;
+            colocarHijo(destino, c + 1, hermano);
+            destino.cantidad = n;
+            destino.total = total;
+            return new Nodo[] {destino, null};
+        }
+
+        // Dividir: primero la secuencia completa de hijos y después cada mitad
+        Nodo[] hijos = new Nodo[n];
+        System.arraycopy(nodo.hijos, 0, hijos, 0, c);
+        hijos[c] = hijo;
+        hijos[c + 1] = hermano;
+        System.arraycopy(nodo.hijos, c + 1, hijos, c + 2, nodo.cantidad - c - 1);
+        long[] minimos = new long[n * ancho];
+        System.arraycopy(nodo.minimos, 0, minimos, 0, (c + 1) * ancho);
+        System.arraycopy(nodo.minimos, (c + 1) * ancho, minimos, (c + 2) * ancho, (nodo.cantidad - c - 1) * ancho);
+        copiarMinimo(hermano, minimos, (c + 1) * ancho);
+
+        int mitad = n / 2;
+        return new Nodo[] {internoCon(hijos, minimos, 0, mitad), internoCon(hijos, minimos, mitad, n)};
+    }
+
+    /**
+     * @return {@link #SIN_CAMBIOS} si la entrada no estaba, null si el nodo quedó vacío o
+     *         el nodo que lo sustituye
+     */
+    private Nodo eliminar(Nodo nodo, Sonda sonda) {
+        if (nodo.esHoja()) {
+            int i = cotaInferior(sonda, nodo);
+            if (i >= nodo.cantidad || comparar(sonda, nodo, i) != 0) {
+                return SIN_CAMBIOS;
+            }
+            if (nodo.cantidad == 1) {
+                return null;
+            }
+            Nodo nueva = nuevaHoja();
+            copiar(nodo, 0, i, nueva, 0);
+            copiar(nodo, i + 1, nodo.cantidad, nueva, i);
+            nueva.cantidad = nueva.total = nodo.cantidad - 1;
+            return nueva;
+        }
+
+        int c = hijoPara(sonda, nodo, false);
+        Nodo hijo = eliminar(nodo.hijos[c], sonda);
+        if (hijo == SIN_CAMBIOS) {
+            return SIN_CAMBIOS;
+        }
+
+        if (hijo != null) {
+            Nodo copia = copiarInterno(nodo);
+            copia.hijos[c] = hijo;
+            copia.total = nodo.total - 1;
+            return copia;
+        }
+
+        // El hijo quedó vacío: se quita (las hojas a medio llenar no se fusionan)
+        if (nodo.cantidad == 1) {
+            return null;
+        }
+        Nodo copia = copiarInterno(nodo);
+        System.arraycopy(nodo.hijos, c + 1, copia.hijos, c, nodo.cantidad - c - 1);
+        System.arraycopy(nodo.minimos, (c + 1) * ancho, copia.minimos, c * ancho, (nodo.cantidad - c - 1) * ancho);
+        copia.hijos[nodo.cantidad - 1] = null;
+        copia.cantidad = nodo.cantidad - 1;
+        copia.total = nodo.total - 1;
+        return copia;
+    }
+
+    /**
+     * Elige el hijo de un nodo interno donde está (o iría) lo buscado. Las entradas de cada
+     * hijo son mayores o iguales que su mínimo y menores que el mínimo del siguiente.
+     * @param estricto si es true, el último hijo cuyo mínimo es menor que lo buscado (para
+     *                 la primera entrada mayor o igual); si no, menor o igual
+     */
+    private int hijoPara(Sonda sonda, Nodo nodo, boolean estricto) {
+        int desde = 1;
+        int hasta = nodo.cantidad;
+        while (desde < hasta) {
+            int medio = (desde + hasta) >>> 1;
+            int c = sonda.comparar(nodo.minimos[medio * ancho], ancho == 2 ? nodo.minimos[medio * 2 + 1] : 0);
+            if (estricto ? c < 0 : c <= 0) {
+                desde = medio + 1;
+            } else {
+                hasta = medio;
+            }
+        }
+        return desde - 1;
+    }
+
+    /**
+     * @return posición de la primera entrada de la hoja mayor o igual que lo buscado
+     */
+    private int cotaInferior(Sonda sonda, Nodo hoja) {
+        int desde = 0;
+        int hasta = hoja.cantidad;
+        while (desde < hasta) {
+            int medio = (desde + hasta) >>> 1;
+            if (comparar(sonda, hoja, medio) < 0) {
+                desde = medio + 1;
+            } else {
+                hasta = medio;
+            }
+        }
+        return desde;
+    }
+
+    private int comparar(Sonda sonda, Nodo hoja, int i) {
+        return sonda.comparar(hoja.entradas.get(i * ancho), ancho == 2 ? hoja.entradas.get(i * 2 + 1) : 0);
+    }
+
+    private void escribir(Nodo hoja, int i, long primera, long segunda) {
+        hoja.entradas.put(i * ancho, primera);
+        if (ancho == 2) {
+            hoja.entradas.put(i * 2 + 1, segunda);
+        }
+    }
+
+    /**
+     * Copia las entradas [desde, hasta) de una hoja a otra a partir de {@code en}
+     */
+    private void copiar(Nodo origen, int desde, int hasta, Nodo destino, int en) {
+        if (desde >= hasta) return;
+        LongBuffer o = origen.entradas.duplicate();
+        o.limit(hasta * ancho);
+        o.position(desde * ancho);
+        LongBuffer d = destino.entradas.duplicate();
+        d.position(en * ancho);
+        d.put(o);
+    }
+
+    private void colocarHijo(Nodo nodo, int c, Nodo hijo) {
+        nodo.hijos[c] = hijo;
+        copiarMinimo(hijo, nodo.minimos, c * ancho);
+    }
+
+    /**
+     * Copia la primera entrada del subárbol de {@code hijo} (su separador) en {@code destino}
+     */
+    private void copiarMinimo(Nodo hijo, long[] destino, int en) {
+        if (hijo.esHoja()) {
+            for (int w = 0; w < ancho; w++) {
+                destino[en + w] = hijo.entradas.get(w);
+            }
+        } else {
+            System.arraycopy(hijo.minimos, 0, destino, en, ancho);
+        }
+    }
+
+    private Nodo internoCon(Nodo[] hijos, long[] minimos, int desde, int hasta) {
+        Nodo nodo = nuevoInterno();
+        System.arraycopy(hijos, desde, nodo.hijos, 0, hasta - desde);
+        System.arraycopy(minimos, desde * ancho, nodo.minimos, 0, (hasta - desde) * ancho);
+        nodo.cantidad = hasta - desde;
+        for (int i = desde; i < hasta; i++) {
+            nodo.total += hijos[i].total;
+        }
+        return nodo;
+    }
+
+    private Nodo copiarInterno(Nodo nodo) {
+        Nodo copia = new Nodo(nodo.hijos.clone(), nodo.minimos.clone());
+        copia.cantidad = nodo.cantidad;
+        copia.total = nodo.total;
+        return copia;
+    }
+
+    private Nodo nuevoInterno() {
+        return new Nodo(new Nodo[CAPACIDAD_INTERNO], new long[CAPACIDAD_INTERNO * ancho]);
+    }
+
+    /**
+     * @return hoja vacía en el heap
+     */
+    private Nodo nuevaHoja() {
+        return new Nodo(LongBuffer.allocate(CAPACIDAD_HOJA * ancho));
+    }
+
+    /**
+     * Nodo del árbol: una hoja (entradas) o un nodo interno (hijos y el mínimo de cada uno).
+     * Solo se modifica antes de publicarse.
+     */
+    private static final class Nodo {
+        final LongBuffer entradas;
+        final Nodo[] hijos;
+        final long[] minimos;
+        int cantidad;
+        int total;
+
+        Nodo(LongBuffer entradas) {
+            this.entradas = entradas;
+            this.hijos = null;
+            this.minimos = null;
+        }
+
+        Nodo(Nodo[] hijos, long[] minimos) {
+            this.entradas = null;
+            this.hijos = hijos;
+            this.minimos = minimos;
+        }
+
+        boolean esHoja() {
+            return hijos == null;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package biblioteca.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Textos en UTF-8 guardados uno detrás de otro en bloques de 1 MB, directos si la arena se
+ * crea fuera del heap. Cada texto se identifica con una referencia {@code long} (bloque,
+ * desplazamiento y longitud) que cabe en una entrada de {@link ArbolOrdenado}.
+ *
+ * Lo escrito nunca cambia, así que una referencia se puede leer sin bloqueos desde que se
+ * publica. La arena no sabe qué textos dejan de usarse: quien la usa lleva la cuenta y,
+ * cuando le conviene, copia los vivos a una arena nueva con {@link #copiar}
+ * ({@link IndicePrefijos} lo hace al compactarse).
+ */
+final class ArenaTextos {
+
+    private static final int BITS_POSICION = 20;
+    private static final int TAMANIO_BLOQUE = 1 << BITS_POSICION;
+    private static final long MASCARA = TAMANIO_BLOQUE - 1;
+
+    /** Bytes máximos de un texto: la longitud se guarda en 20 bits */
+    static final int LONGITUD_MAXIMA = TAMANIO_BLOQUE - 1;
+
+    private final boolean fueraDelHeap;
+    private volatile ByteBuffer[] bloques = new ByteBuffer[0];
+    private int usados = TAMANIO_BLOQUE;
+    private volatile long escritos;
+
+    /**
+     * @param fueraDelHeap si es true, los bloques se reservan en memoria directa
+     */
+    ArenaTextos(boolean fueraDelHeap) {
+        this.fueraDelHeap = fueraDelHeap;
+    }
+
+    /**
+     * Guarda un texto
+     * @param texto texto a guardar
+     * @return su referencia
+     * @throws IllegalArgumentException si ocupa más de {@link #LONGITUD_MAXIMA} bytes
+     */
+    long agregar(String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > LONGITUD_MAXIMA) {
+            throw new IllegalArgumentException("Texto demasiado largo para el índice: " + bytes.length + " bytes");
+        }
+        return agregar(bytes);
+    }
+
+    /**
+     * Copia un texto de otra arena sin decodificarlo
+     * @param origen arena donde está el texto
+     * @param referencia referencia del texto en {@code origen}
+     * @return su referencia en esta arena
+     */
+    long copiar(ArenaTextos origen, long referencia) {
+        return agregar(origen.bytes(referencia));
+    }
+
+    /**
+     * @return bytes escritos en la arena, incluidos los de textos que ya no se usan
+     */
+    long escritos() {
+        return escritos;
+    }
+
+    /**
+     * @param referencia referencia de un texto
+     * @return bytes que ocupa el texto
+     */
+    static int longitud(long referencia) {
+        return (int) (referencia & MASCARA);
+    }
+
+    private synchronized long agregar(byte[] bytes) {
+        if (usados + bytes.length > TAMANIO_BLOQUE) {
+            ByteBuffer bloque = fueraDelHeap ? ByteBuffer.allocateDirect(TAMANIO_BLOQUE) : ByteBuffer.allocate(TAMANIO_BLOQUE);
+            ByteBuffer[] nuevos = Arrays.copyOf(bloques, bloques.length + 1);
+            nuevos[nuevos.length - 1] = bloque;
+            bloques = nuevos;
+            usados = 0;
+        }
+
+        ByteBuffer vista = bloques[bloques.length - 1].duplicate();
+        vista.position(usados);
+        vista.put(bytes);
+        long referencia = ((long) (bloques.length - 1) << (2 * BITS_POSICION)) | ((long) usados << BITS_POSICION) | bytes.length;
+        usados += bytes.length;
+        escritos += bytes.length;
+        return referencia;
+    }
+
+    /**
+     * @param referencia referencia devuelta por {@link #agregar}
+     * @return el texto guardado
+     */
+    String texto(long referencia) {
+        return new String(bytes(referencia), StandardCharsets.UTF_8);
+    }
+
+    private byte[] bytes(long referencia) {
+        byte[] bytes = new byte[longitud(referencia)];
+        ByteBuffer vista = bloques[bloque(referencia)].duplicate();
+        vista.position(desplazamiento(referencia));
+        vista.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Compara un texto guardado con otro, carácter a carácter (UTF-16, como
+     * {@link String#compareTo}), sin decodificarlo a un {@code String}
+     * @param referencia referencia del texto guardado
+     * @param otro texto con el que comparar
+     * @param comoPrefijo si es true, un texto guardado que empieza por {@code otro} es igual
+     * @return negativo, 0 o positivo si el texto guardado es menor, igual o mayor
+     */
+    int comparar(long referencia, String otro, boolean comoPrefijo) {
+        ByteBuffer bloque = bloques[bloque(referencia)];
+        int p = desplazamiento(referencia);
+        int fin = p + longitud(referencia);
+        int i = 0;
+
+        while (p < fin) {
+            if (i == otro.length()) {
+                return comoPrefijo ? 0 : 1;
+            }
+
+            int b = bloque.get(p) & 0xFF;
+            int codigo;
+            if (b < 0x80) {
+                codigo = b;
+                p += 1;
+            } else if (b < 0xE0) {
+                codigo = (b & 0x1F) << 6 | (bloque.get(p + 1) & 0x3F);
+                p += 2;
+            } else if (b < 0xF0) {
+                codigo = (b & 0x0F) << 12 | (bloque.get(p + 1) & 0x3F) << 6 | (bloque.get(p + 2) & 0x3F);
+                p += 3;
+            } else {
+                codigo = (b & 0x07) << 18 | (bloque.get(p + 1) & 0x3F) << 12
+                        | (bloque.get(p + 2) & 0x3F) << 6 | (bloque.get(p + 3) & 0x3F);
+                p += 4;
+            }
+
+            if (codigo < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                int diferencia = codigo - otro.charAt(i++);
+                if (diferencia != 0) return diferencia;
+            } else {
+                int diferencia = Character.highSurrogate(codigo) - otro.charAt(i++);
+                if (diferencia != 0) return diferencia;
+                if (i == otro.length()) {
+                    return comoPrefijo ? 0 : 1;
+                }
+                diferencia = Character.lowSurrogate(codigo) - otro.charAt(i++);
+                if (diferencia != 0) return diferencia;
+            }
+        }
+        return i == otro.length() ? 0 : -1;
+    }
+
+    private static int bloque(long referencia) {
+        return (int) (referencia >>> (2 * BITS_POSICION));
+    }
+
+    private static int desplazamiento(long referencia) {
+        return (int) ((referencia >>> BITS_POSICION) & MASCARA);
+    }
+}
@@ -1,29 +1,178 @@
 package biblioteca.services;
 
+import biblioteca.models.EstadisticasCache;
 import biblioteca.models.Libro;
+import biblioteca.models.OrdenLibros;
+import biblioteca.models.PaginaLibros;
+import biblioteca.models.Sugerencia;
 
+import biblioteca.models.ResultadoCarga;
+import observabilidad.eventos.EventoMutacion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
 
+/**
+ * Catálogo de libros en memoria, seguro para peticiones concurrentes.
+ *
+ * Los libros se guardan por su ISBN-13 canónico ({@link Isbn}), así que el mismo libro
+ * escrito con o sin guiones, o como ISBN-10, es una sola entrada. Las lecturas (listados,
+ * búsquedas, consultas por ISBN) no toman bloqueos: la {@link TablaLibros} usa lecturas
+ * optimistas y los índices son estructuras concurrentes. Cada escritura se hace dentro de
+ * un {@code calcular} sobre la clave, de modo que el alta es atómica (insertar si no
+ * existe) y el mantenimiento de los índices queda serializado por ISBN.
+ *
+ * El motor de almacenamiento es intercambiable ({@link AlmacenLibros}). Con el constructor
+ * sin argumentos se elige con la propiedad de sistema {@code biblioteca.almacen}:
+ * {@code memoria} (por defecto) o {@code columnar} (fuera del heap; persistente si además
+ * se indica {@code biblioteca.almacen.archivo}).
+ *
+ * El almacén y los índices forman un {@link Catalogo} publicado en una sola referencia
+ * volátil. Una carga masiva grande ({@link #cargarLibros}) construye un catálogo nuevo en
+ * paralelo y lo publica de una vez; mientras tanto las lecturas y las escrituras siguen
+ * usando el anterior. Las cargas pequeñas se aplican sobre el catálogo publicado. Los ISBN escritos durante la construcción se anotan en un diario y se vuelven
+ * a copiar al catálogo nuevo justo antes de sustituirlo, para que ninguna escritura se pierda.
+ *
+ * Los resultados de las búsquedas de texto y de los listados por autor se guardan en una
+ * {@link CacheConsultas} acotada por peso ({@code biblioteca.cache.peso}, número total de
+ * libros en los resultados guardados; 0 la desactiva). Cada escritura incrementa la versión
+ * del catálogo, y un resultado solo se reutiliza si se calculó con la versión actual.
+ */
 public class BibliotecaService {
     
-    private Map<String, Libro> biblioteca;
+    /** Longitud máxima de título y autor, para que ningún texto supere el límite de los índices */
+    private static final int LONGITUD_MAXIMA_TEXTO = 10_000;
+    
+    /**
+     * Libros de un rango de años hasta los que el listado por título los ordena en cada
+     * petición; por encima recorre el índice de títulos
+     */
+    private static final int MAXIMO_RANGO_ORDENADO = 10_000;
+    
+    private volatile Catalogo catalogo;
+    
+    /**
+     * Las escrituras normales toman el bloqueo compartido; la publicación de una carga
+     * masiva, el exclusivo. Las lecturas no lo usan.
+     */
+    private final ReentrantReadWriteLock bloqueoCarga = new ReentrantReadWriteLock();
+    
+    /** Serializa las cargas masivas: cada una construye su catálogo sobre el publicado */
+    private final ReentrantLock bloqueoCargaMasiva = new ReentrantLock();
+    
+    /**
+     * ISBN escritos mientras una carga masiva construye su catálogo, o null si no hay
+     * ninguna en curso. Se cambia con el bloqueo exclusivo y se escribe con el compartido.
+     */
+    private volatile Set<Long> diarioCarga;
+    
+    /** Se incrementa después de cada escritura; invalida los resultados de la caché */
+    private final AtomicLong versionCatalogo = new AtomicLong();
+    
+    /**
+     * Origen de las versiones de los libros (y de sus ETag): cada escritura toma el
+     * siguiente valor, así que una versión nunca se repite, tampoco si un ISBN se borra y
+     * se vuelve a crear. Al abrir un almacén con libros empieza en su versión más alta.
+     */
+    private final AtomicLong secuenciaVersiones = new AtomicLong();
+    private final CacheConsultas<PaginaLibros> cache =
+            new CacheConsultas<>(Long.getLong("biblioteca.cache.peso", 100_000));
     
     public BibliotecaService() {
-        this.biblioteca = new HashMap<>();
-        inicializarDatosEjemplo();
+        this(crearAlmacenConfigurado(), System.getProperty("biblioteca.carga.archivo"));
+    }
+    
+    /**
+     * Crea el servicio sobre un motor de almacenamiento concreto. Si el almacén ya tiene
+     * libros (por ejemplo, uno persistente reabierto) se indexan; si está vacío se cargan
+     * los datos de ejemplo.
+     * @param almacen motor de almacenamiento del catálogo
+     */
+    public BibliotecaService(AlmacenLibros almacen) {
+        this(almacen, null);
+    }
+    
+    /**
+     * Crea el servicio y, si se indica, hace una carga masiva inicial desde un archivo
+     * JSON Lines (en ese caso no se cargan los datos de ejemplo)
+     * @param almacen motor de almacenamiento del catálogo
+     * @param archivoCarga ruta del archivo a cargar, o null
+     * @throws UncheckedIOException si no se puede leer el archivo
+     */
+    public BibliotecaService(AlmacenLibros almacen, String archivoCarga) {
+        this.catalogo = indexarAlmacen(almacen);
+        
+        if (almacen.tamanio() == 0 && (archivoCarga == null || archivoCarga.isEmpty())) {
+            inicializarDatosEjemplo();
+        }
+        
+        if (archivoCarga != null && !archivoCarga.isEmpty()) {
+            ResultadoCarga resultado;
+            try {
+                resultado = cargarLibros(Files.readAllBytes(Paths.get(archivoCarga)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se pudo leer el archivo de carga " + archivoCarga, e);
+            }
+            System.out.println("Carga inicial desde " + archivoCarga + ": " + resultado.getCargados()
+                    + " libros, " + resultado.getRechazados() + " rechazados");
+        }
+    }
+    
+    /**
+     * Crea el motor de almacenamiento indicado por las propiedades de sistema
+     * @return el almacén configurado
+     */
+    private static AlmacenLibros crearAlmacenConfigurado() {
+        String tipo = System.getProperty("biblioteca.almacen", "memoria");
+        
+        if ("columnar".equalsIgnoreCase(tipo)) {
+            String archivo = System.getProperty("biblioteca.almacen.archivo");
+            return archivo == null || archivo.isEmpty() ? new AlmacenColumnar() : new AlmacenColumnar(archivo);
+        }
+        
+        return new TablaLibros();
+    }
+    
+    /**
+     * Construye los índices de búsqueda a partir de los libros ya guardados en el almacén,
+     * leyendo sus campos sin crear un {@link Libro} por registro, y lleva la secuencia de
+     * versiones hasta la más alta guardada
+     * @param almacen almacén del catálogo (puede estar vacío)
+     * @return el catálogo listo para publicar
+     */
+    private Catalogo indexarAlmacen(AlmacenLibros almacen) {
+        Catalogo c = new Catalogo(almacen, true);
+        almacen.recorrer((clave, titulo, autor, anio, version) -> {
+            c.indexar(clave, titulo, autor, anio);
+            secuenciaVersiones.accumulateAndGet(version, Math::max);
+        });
+        c.terminarConstruccion();
+        return c;
     }
     
     /**
      * Inicializa la biblioteca con datos de ejemplo
      */
     private void inicializarDatosEjemplo() {
-        biblioteca.put("978-0134685991", new Libro("978-0134685991", "Effective Java", "Joshua Bloch", 2018));
-        biblioteca.put("978-0596009205", new Libro("978-0596009205", "Head First Java", "Kathy Sierra", 2005));
-        biblioteca.put("978-0132350884", new Libro("978-0132350884", "Clean Code", "Robert Martin", 2008));
+        guardar(new Libro("978-0134685991", "Effective Java", "Joshua Bloch", 2018));
+        guardar(new Libro("978-0596009205", "Head First Java", "Kathy Sierra", 2005));
+        guardar(new Libro("978-0132350884", "Clean Code", "Robert Martin", 2008));
     }
     
     /**
@@ -31,7 +180,81 @@ public class BibliotecaService {
      * @return lista de todos los libros
      */
     public List<Libro> obtenerTodosLosLibros() {
-        return biblioteca.values().stream().collect(Collectors.toList());
+        return catalogo.almacen.valores();
+    }
+    
+    /**
+     * Lista libros con filtros opcionales por autor y rango de años, ordenados y paginados.
+     * Sin autor, el rango de años y el orden se resuelven con los índices ordenados
+     * (O(log n + k)), sin ordenar el catálogo completo; el orden por título de un rango de
+     * años solo ordena en la petición si el rango tiene pocos libros. Sin filtros ni orden,
+     * el almacén se recorre solo hasta completar la página.
+     * @param autor nombre del autor (búsqueda parcial case-insensitive), o null
+     * @param anioDesde primer año incluido (Integer.MIN_VALUE para no acotar)
+     * @param anioHasta último año incluido (Integer.MAX_VALUE para no acotar)
+     * @param orden orden del resultado, o null para el orden del almacén
+     * @param offset número de libros a saltar
+     * @param limite número máximo de libros
+     * @return lista de libros
+     */
+    public List<Libro> obtenerLibros(String autor, int anioDesde, int anioHasta, OrdenLibros orden,
+                                     int offset, int limite) {
+        // La versión se lee antes que el catálogo: un resultado nunca queda con una versión más nueva que sus datos
+        long version = versionCatalogo.get();
+        Catalogo c = catalogo;
+        boolean filtraAnios = anioDesde != Integer.MIN_VALUE || anioHasta != Integer.MAX_VALUE;
+        
+        // Con autor los candidatos salen del índice de trigramas y son pocos: se ordenan aquí
+        if (autor != null && !autor.isEmpty()) {
+            String clave = "autor\0" + IndiceTrigramas.normalizar(autor) + '\0' + anioDesde + '\0' + anioHasta
+                    + '\0' + orden + '\0' + offset + '\0' + limite;
+            PaginaLibros enCache = cache.obtener(clave, version);
+            if (enCache != null) {
+                return enCache.getLibros();
+            }
+            
+            List<Libro> libros = librosPorIsbn(c, c.indiceAutores.buscar(autor));
+            if (filtraAnios) {
+                libros.removeIf(libro -> libro.getAnio() < anioDesde || libro.getAnio() > anioHasta);
+            }
+            if (orden != null) {
+                libros.sort(comparador(orden));
+            }
+            List<Libro> resultado = pagina(libros, offset, limite);
+            cache.guardar(clave, new PaginaLibros(resultado, resultado.size()), resultado.size() + 1, version);
+            return resultado;
+        }
+        
+        if (orden == OrdenLibros.TITULO) {
+            if (!filtraAnios) {
+                return librosPorIsbn(c, c.prefijosTitulos.enOrden(offset, limite));
+            }
+            // Un rango pequeño se ordena aquí; uno grande se sirve del índice de títulos filtrando por año
+            if (c.indiceAnios.contar(anioDesde, anioHasta) <= MAXIMO_RANGO_ORDENADO) {
+                List<Libro> libros = librosPorIsbn(c, c.indiceAnios.rango(anioDesde, anioHasta, 0, MAXIMO_RANGO_ORDENADO));
+                libros.sort(comparador(orden));
+                return pagina(libros, offset, limite);
+            }
+            return librosPorIsbn(c, c.prefijosTitulos.enOrden(anioDesde, anioHasta, offset, limite));
+        }
+        
+        if (orden == OrdenLibros.ANIO || filtraAnios) {
+            return librosPorIsbn(c, c.indiceAnios.rango(anioDesde, anioHasta, offset, limite));
+        }
+        
+        // Sin filtros ni orden se recorre el almacén solo hasta completar la página
+        List<Long> claves = new ArrayList<>(Math.min(limite, 64));
+        int[] saltar = {offset};
+        c.almacen.recorrerClaves(clave -> {
+            if (saltar[0] > 0) {
+                saltar[0]--;
+                return true;
+            }
+            if (claves.size() >= limite) return false;
+            claves.add(clave);
+            return true;
+        });
+        return librosPorIsbn(c, claves);
     }
     
     /**
@@ -40,18 +263,21 @@ public class BibliotecaService {
      * @return lista de libros del autor
      */
     public List<Libro> obtenerLibrosPorAutor(String autor) {
-        return biblioteca.values().stream()
-                .filter(libro -> libro.getAutor().toLowerCase().contains(autor.toLowerCase()))
-                .collect(Collectors.toList());
+        Catalogo c = catalogo;
+        return librosPorIsbn(c, c.indiceAutores.buscar(autor));
     }
     
     /**
      * Obtiene un libro por su ISBN
-     * @param isbn el ISBN del libro
+     * @param isbn el ISBN del libro (ISBN-10 o ISBN-13, con o sin guiones)
      * @return Optional con el libro si existe
      */
     public Optional<Libro> obtenerLibroPorIsbn(String isbn) {
-        return Optional.ofNullable(biblioteca.get(isbn));
+        long clave = Isbn.aClave(isbn);
+        if (clave == Isbn.INVALIDO) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(catalogo.almacen.obtener(clave));
     }
     
     /**
@@ -60,9 +286,74 @@ public class BibliotecaService {
      * @return lista de libros que coinciden
      */
     public List<Libro> buscarLibrosPorTitulo(String query) {
-        return biblioteca.values().stream()
-                .filter(libro -> libro.getTitulo().toLowerCase().contains(query.toLowerCase()))
-                .collect(Collectors.toList());
+        Catalogo c = catalogo;
+        return librosPorIsbn(c, c.indiceTitulos.buscar(query));
+    }
+    
+    /**
+     * Busca libros por texto libre en título y autor, ordenados por relevancia (BM25)
+     * @param consulta términos a buscar
+     * @param offset número de resultados a saltar
+     * @param limite número máximo de resultados
+     * @return la página pedida y el total de libros que coinciden
+     */
+    public PaginaLibros buscarLibros(String consulta, int offset, int limite) {
+        // El orden de los términos no cambia la puntuación: la clave usa los términos ordenados
+        String clave = "buscar\0" + String.join(" ", new TreeSet<>(IndiceTextoCompleto.tokenizar(consulta)))
+                + '\0' + offset + '\0' + limite;
+        long version = versionCatalogo.get();
+        PaginaLibros pagina = cache.obtener(clave, version);
+        if (pagina != null) {
+            return pagina;
+        }
+        
+        Catalogo c = catalogo;
+        IndiceTextoCompleto.Resultado resultado = c.textoCompleto.buscar(consulta, offset, limite);
+        pagina = new PaginaLibros(librosPorIsbn(c, resultado.claves), resultado.total);
+        cache.guardar(clave, pagina, pagina.getLibros().size() + 1, version);
+        return pagina;
+    }
+    
+    /**
+     * @return aciertos, fallos, expulsiones e invalidaciones de la caché de consultas
+     */
+    public EstadisticasCache estadisticasCache() {
+        return cache.estadisticas();
+    }
+    
+    /**
+     * Sugiere títulos y autores que empiezan por un prefijo, en orden alfabético.
+     * Cada autor aparece una sola vez aunque tenga varios libros.
+     * @param prefijo inicio del título o del autor (case-insensitive)
+     * @param limite número máximo de sugerencias
+     * @return lista de sugerencias
+     */
+    public List<Sugerencia> autocompletar(String prefijo, int limite) {
+        Catalogo c = catalogo;
+        List<IndicePrefijos.Coincidencia> titulos = c.prefijosTitulos.buscar(prefijo, limite, false);
+        List<IndicePrefijos.Coincidencia> autores = c.prefijosAutores.buscar(prefijo, limite, true);
+        
+        // Mezcla de las dos listas ya ordenadas hasta completar el límite
+        List<Sugerencia> sugerencias = new ArrayList<>(Math.min(limite, titulos.size() + autores.size()));
+        int t = 0;
+        int a = 0;
+        while (sugerencias.size() < limite && (t < titulos.size() || a < autores.size())) {
+            boolean tomarTitulo = a >= autores.size()
+                    || (t < titulos.size() && titulos.get(t).texto.compareTo(autores.get(a).texto) <= 0);
+            
+            if (tomarTitulo) {
+                Libro libro = c.almacen.obtener(titulos.get(t++).isbn);
+                if (libro != null) {
+                    sugerencias.add(new Sugerencia(libro.getTitulo(), "titulo", libro.getIsbn()));
+                }
+            } else {
+                Libro libro = c.almacen.obtener(autores.get(a++).isbn);
+                if (libro != null) {
+                    sugerencias.add(new Sugerencia(libro.getAutor(), "autor", null));
+                }
+            }
+        }
+        return sugerencias;
     }
     
     /**
@@ -72,17 +363,45 @@ public class BibliotecaService {
      * @throws IllegalArgumentException si el libro ya existe o los datos son inválidos
      */
     public Libro crearLibro(Libro libro) {
-        validarLibro(libro);
+        EventoMutacion evento = EventoMutacion.iniciar("biblioteca", "crear");
+        try {
+            Libro resultado = insertarLibro(libro);
+            evento.terminar(resultado.getIsbn(), true);
+            return resultado;
+        } catch (RuntimeException e) {
+            evento.terminar(libro != null ? libro.getIsbn() : null, false);
+            throw e;
+        }
+    }
+    
+    private Libro insertarLibro(Libro libro) {
+        long clave = validarLibroNuevo(libro);
         
-        if (biblioteca.containsKey(libro.getIsbn())) {
-            throw new IllegalArgumentException("Ya existe un libro con ese ISBN");
+        // Insertar si no existe, de forma atómica respecto a otras altas del mismo ISBN
+        Libro guardado;
+        bloqueoCarga.readLock().lock();
+        try {
+            Catalogo c = catalogo;
+            guardado = c.almacen.calcular(clave, actual -> {
+                if (actual != null) {
+                    return actual;
+                }
+                libro.setVersion(secuenciaVersiones.incrementAndGet());
+                c.indexar(clave, libro);
+                return libro;
+            });
+            if (guardado == libro) {
+                anotarEscritura(clave);
+                versionCatalogo.incrementAndGet();
+            }
+        } finally {
+            bloqueoCarga.readLock().unlock();
         }
         
-        if (!validarISBN(libro.getIsbn())) {
-            throw new IllegalArgumentException("Formato de ISBN inválido");
+        if (guardado != libro) {
+            throw new IllegalArgumentException("Ya existe un libro con ese ISBN");
         }
         
-        biblioteca.put(libro.getIsbn(), libro);
         return libro;
     }
     
@@ -94,16 +413,72 @@ public class BibliotecaService {
      * @throws IllegalArgumentException si el libro no existe o los datos son inválidos
      */
     public Libro actualizarLibro(String isbn, Libro libroActualizado) {
-        if (!biblioteca.containsKey(isbn)) {
+        return actualizarLibro(isbn, libroActualizado, null);
+    }
+    
+    /**
+     * Actualiza un libro existente solo si su versión es la esperada (compare-and-set).
+     * La comprobación y la escritura se hacen de forma atómica dentro del calcular del ISBN.
+     * @param isbn el ISBN del libro a actualizar
+     * @param libroActualizado los nuevos datos del libro
+     * @param versionEsperada versión que debe tener el libro, o null para no comprobarla
+     * @return el libro actualizado, con la versión incrementada
+     * @throws PrecondicionFallidaException si la versión actual no es la esperada
+     * @throws IllegalArgumentException si el libro no existe o los datos son inválidos
+     */
+    public Libro actualizarLibro(String isbn, Libro libroActualizado, Long versionEsperada) {
+        EventoMutacion evento = EventoMutacion.iniciar("biblioteca", "actualizar");
+        try {
+            Libro resultado = reemplazarLibro(isbn, libroActualizado, versionEsperada);
+            evento.terminar(isbn, true);
+            return resultado;
+        } catch (RuntimeException e) {
+            evento.terminar(isbn, false);
+            throw e;
+        }
+    }
+    
+    private Libro reemplazarLibro(String isbn, Libro libroActualizado, Long versionEsperada) {
+        long clave = Isbn.aClave(isbn);
+        if (clave == Isbn.INVALIDO || catalogo.almacen.obtener(clave) == null) {
             throw new IllegalArgumentException("Libro no encontrado con ISBN: " + isbn);
         }
         
         validarLibroActualizacion(libroActualizado);
         
-        // Mantener el ISBN original
-        libroActualizado.setIsbn(isbn);
+        Libro resultado;
+        bloqueoCarga.readLock().lock();
+        try {
+            Catalogo c = catalogo;
+            resultado = c.almacen.calcular(clave, actual -> {
+                if (actual == null) {
+                    return null;
+                }
+                if (versionEsperada != null && actual.getVersion() != versionEsperada) {
+                    throw new PrecondicionFallidaException(
+                        "El libro fue modificado: versión actual " + actual.getVersion()
+                            + ", esperada " + versionEsperada, actual.getVersion());
+                }
+                // Mantener el ISBN original tal como se registró
+                libroActualizado.setIsbn(actual.getIsbn());
+                libroActualizado.setVersion(secuenciaVersiones.incrementAndGet());
+                c.desindexar(clave, actual);
+                c.indexar(clave, libroActualizado);
+                return libroActualizado;
+            });
+            if (resultado != null) {
+                anotarEscritura(clave);
+                versionCatalogo.incrementAndGet();
+            }
+        } finally {
+            bloqueoCarga.readLock().unlock();
+        }
+        
+        // Pudo eliminarse entre la comprobación y la actualización
+        if (resultado == null) {
+            throw new IllegalArgumentException("Libro no encontrado con ISBN: " + isbn);
+        }
         
-        biblioteca.put(isbn, libroActualizado);
         return libroActualizado;
     }
     
@@ -114,38 +489,371 @@ public class BibliotecaService {
      * @throws IllegalArgumentException si el libro no existe
      */
     public Libro eliminarLibro(String isbn) {
-        Libro libroEliminado = biblioteca.remove(isbn);
+        EventoMutacion evento = EventoMutacion.iniciar("biblioteca", "eliminar");
+        try {
+            Libro resultado = quitarLibro(isbn);
+            evento.terminar(isbn, true);
+            return resultado;
+        } catch (RuntimeException e) {
+            evento.terminar(isbn, false);
+            throw e;
+        }
+    }
+    
+    private Libro quitarLibro(String isbn) {
+        long clave = Isbn.aClave(isbn);
+        Libro[] libroEliminado = new Libro[1];
+        if (clave != Isbn.INVALIDO) {
+            bloqueoCarga.readLock().lock();
+            try {
+                Catalogo c = catalogo;
+                c.almacen.calcular(clave, actual -> {
+                    if (actual != null) {
+                        c.desindexar(clave, actual);
+                        libroEliminado[0] = actual;
+                    }
+                    return null;
+                });
+                // Un ISBN que no estaba no cambia el catálogo: no se invalida la caché
+                if (libroEliminado[0] != null) {
+                    anotarEscritura(clave);
+                    versionCatalogo.incrementAndGet();
+                }
+            } finally {
+                bloqueoCarga.readLock().unlock();
+            }
+        }
         
-        if (libroEliminado == null) {
+        if (libroEliminado[0] == null) {
             throw new IllegalArgumentException("Libro no encontrado con ISBN: " + isbn);
         }
         
-        return libroEliminado;
+        return libroEliminado[0];
+    }
+    
+    /**
+     * Carga en bloque libros en formato JSON Lines (un libro en JSON por línea).
+     *
+     * El análisis y la validación se reparten en tramos fork-join. Los libros cargados
+     * sustituyen a los existentes con el mismo ISBN (su versión se incrementa); si un ISBN
+     * se repite en la carga gana la última línea. Las líneas inválidas se rechazan sin
+     * detener la carga. Las cargas simultáneas se hacen una detrás de otra.
+     *
+     * Una carga pequeña respecto al catálogo (menos libros que el porcentaje del catálogo
+     * indicado en {@code biblioteca.carga.maximoEnSitio}, 10 por defecto) se aplica sobre el
+     * catálogo publicado, libro a libro y en paralelo, como escrituras normales: copiar el
+     * catálogo entero costaría mucho más que la carga. Las lecturas pueden ver parte de
+     * esa carga mientras se aplica.
+     *
+     * Una carga mayor construye en paralelo un catálogo nuevo (almacén e índices) con los
+     * libros actuales más los cargados. La construcción no detiene las escrituras: los ISBN
+     * escritos mientras tanto se copian del catálogo anterior al nuevo antes de publicarlo,
+     * así que prevalecen sobre las líneas cargadas. El catálogo nuevo se publica de una
+     * vez: las lecturas ven el anterior o el nuevo, nunca uno intermedio.
+     *
+     * El número de hilos es el de núcleos disponibles, o el de la propiedad de sistema
+     * {@code biblioteca.carga.hilos}.
+     * @param datos contenido en UTF-8
+     * @return resumen de la carga, con su duración
+     */
+    public ResultadoCarga cargarLibros(byte[] datos) {
+        EventoMutacion evento = EventoMutacion.iniciar("biblioteca", "cargar");
+        try {
+            ResultadoCarga resultado = cargar(datos);
+            evento.terminar(null, true);
+            return resultado;
+        } catch (RuntimeException e) {
+            evento.terminar(null, false);
+            throw e;
+        }
+    }
+    
+    private ResultadoCarga cargar(byte[] datos) {
+        int hilos = Integer.getInteger("biblioteca.carga.hilos", Runtime.getRuntime().availableProcessors());
+        long inicio = System.nanoTime();
+        
+        ForkJoinPool pool = new ForkJoinPool(Math.max(hilos, 1));
+        try {
+            CargaMasiva.Analisis analisis = pool.submit(() -> CargaMasiva.analizar(datos, this::validarLibroNuevo)).join();
+            
+            // Si un ISBN se repite en la carga gana la última línea
+            Map<Long, Libro> cargados = new HashMap<>(analisis.libros.size() * 2);
+            for (int i = 0; i < analisis.libros.size(); i++) {
+                cargados.put(analisis.claves[i], analisis.libros.get(i));
+            }
+            
+            int total;
+            boolean enSitio;
+            bloqueoCargaMasiva.lock();
+            try {
+                int porcentaje = Integer.getInteger("biblioteca.carga.maximoEnSitio", 10);
+                enSitio = cargados.size() * 100L < (long) catalogo.almacen.tamanio() * porcentaje;
+                if (enSitio) {
+                    pool.submit(() -> aplicarEnSitio(cargados)).join();
+                    total = catalogo.almacen.tamanio();
+                } else {
+                    total = reconstruir(pool, cargados);
+                }
+            } finally {
+                bloqueoCargaMasiva.unlock();
+            }
+            
+            long milisegundos = (System.nanoTime() - inicio) / 1_000_000;
+            System.out.println("Carga masiva" + (enSitio ? " en el catálogo publicado" : "") + ": "
+                    + analisis.libros.size() + " libros (" + analisis.rechazados + " rechazados) en "
+                    + milisegundos + " ms con " + pool.getParallelism() + " hilos");
+            return new ResultadoCarga(analisis.libros.size(), analisis.rechazados, total, milisegundos,
+                    pool.getParallelism(), analisis.mensajesError());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Aplica una carga pequeña sobre el catálogo publicado, con un calcular por libro como
+     * cualquier escritura. Se ejecuta dentro del ForkJoinPool de la carga, con el bloqueo de
+     * cargas masivas, así que no hay ningún diario abierto donde anotar las escrituras.
+     * @param cargados libros válidos de la carga por ISBN-13 canónico
+     */
+    private void aplicarEnSitio(Map<Long, Libro> cargados) {
+        cargados.entrySet().parallelStream().forEach(entrada -> {
+            bloqueoCarga.readLock().lock();
+            try {
+                guardar(entrada.getKey(), entrada.getValue());
+            } finally {
+                bloqueoCarga.readLock().unlock();
+            }
+        });
+    }
+    
+    /**
+     * Construye un catálogo nuevo con los libros actuales más los cargados y lo publica.
+     * Se llama con el bloqueo de cargas masivas.
+     * @param pool ForkJoinPool de la carga
+     * @param cargados libros válidos de la carga por ISBN-13 canónico
+     * @return número de libros del catálogo publicado
+     */
+    private int reconstruir(ForkJoinPool pool, Map<Long, Libro> cargados) {
+        // Desde aquí cada escritura anota su ISBN; las anteriores ya son visibles en el catálogo
+        Catalogo anterior;
+        Set<Long> diario = ConcurrentHashMap.newKeySet();
+        bloqueoCarga.writeLock().lock();
+        try {
+            anterior = catalogo;
+            diarioCarga = diario;
+        } finally {
+            bloqueoCarga.writeLock().unlock();
+        }
+        
+        Catalogo nuevo;
+        try {
+            nuevo = pool.submit(() -> construirCatalogo(anterior, cargados)).join();
+        } catch (RuntimeException e) {
+            diarioCarga = null;
+            throw e;
+        }
+        
+        bloqueoCarga.writeLock().lock();
+        try {
+            diarioCarga = null;
+            try {
+                for (long clave : diario) {
+                    copiarEscritura(anterior, nuevo, clave);
+                }
+                nuevo.almacen.sustituir(anterior.almacen);
+            } catch (RuntimeException e) {
+                nuevo.almacen.cerrar();
+                throw e;
+            }
+            catalogo = nuevo;
+            versionCatalogo.incrementAndGet();
+            // Las lecturas en curso sobre el anterior siguen siendo válidas: cerrar solo libera los archivos
+            anterior.almacen.cerrar();
+            return nuevo.almacen.tamanio();
+        } finally {
+            bloqueoCarga.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Construye un catálogo con los libros de {@code anterior} más los cargados. Se ejecuta
+     * dentro del ForkJoinPool de la carga, así que los streams paralelos (y la ordenación de
+     * los índices ordenados al terminar) usan sus hilos.
+     * @param anterior catálogo publicado; puede recibir escrituras, que se anotan en el diario
+     * @param cargados libros válidos de la carga por ISBN-13 canónico
+     * @return el catálogo nuevo, terminado pero sin publicar
+     */
+    private Catalogo construirCatalogo(Catalogo anterior, Map<Long, Libro> cargados) {
+        // Solo las claves del anterior se copian en el heap; cada libro se lee al copiarlo
+        long[] claves = new long[anterior.almacen.tamanio() + 16];
+        int[] cantidad = {0};
+        anterior.almacen.recorrerClaves(clave -> {
+            if (cantidad[0] == claves.length) return false;
+            claves[cantidad[0]++] = clave;
+            return true;
+        });
+        
+        Catalogo nuevo = new Catalogo(anterior.almacen.crearVacio(), true);
+        try {
+            IntStream.range(0, cantidad[0]).parallel().forEach(i -> {
+                long clave = claves[i];
+                Libro libro = anterior.almacen.obtener(clave);
+                if (libro != null && !cargados.containsKey(clave)) {
+                    nuevo.agregar(clave, libro);
+                }
+            });
+            cargados.entrySet().parallelStream().forEach(entrada -> {
+                long clave = entrada.getKey();
+                Libro libro = entrada.getValue();
+                libro.setVersion(secuenciaVersiones.incrementAndGet());
+                nuevo.agregar(clave, libro);
+            });
+            nuevo.terminarConstruccion();
+        } catch (RuntimeException e) {
+            nuevo.almacen.cerrar();
+            throw e;
+        }
+        return nuevo;
+    }
+    
+    /**
+     * Deja en el catálogo nuevo el libro que tiene ahora el anterior con esa clave (o lo
+     * quita si ya no está). Se llama con el bloqueo exclusivo, así que no hay escrituras
+     * en curso.
+     * @param anterior catálogo publicado
+     * @param nuevo catálogo terminado, aún sin publicar
+     * @param clave ISBN-13 canónico escrito durante la construcción
+     */
+    private static void copiarEscritura(Catalogo anterior, Catalogo nuevo, long clave) {
+        Libro libro = anterior.almacen.obtener(clave);
+        nuevo.almacen.calcular(clave, actual -> {
+            if (actual != null) {
+                nuevo.desindexar(clave, actual);
+            }
+            if (libro != null) {
+                nuevo.indexar(clave, libro);
+            }
+            return libro;
+        });
+    }
+    
+    /**
+     * Anota una escritura si hay una carga masiva construyendo su catálogo. Se llama con
+     * el bloqueo compartido.
+     * @param clave ISBN-13 canónico escrito
+     */
+    private void anotarEscritura(long clave) {
+        Set<Long> diario = diarioCarga;
+        if (diario != null) {
+            diario.add(clave);
+        }
+    }
+    
+    /**
+     * Guarda un libro en la biblioteca y lo agrega a los índices de búsqueda
+     * @param libro el libro a guardar
+     */
+    private void guardar(Libro libro) {
+        guardar(Isbn.aClave(libro.getIsbn()), libro);
+    }
+    
+    /**
+     * Guarda un libro con su clave ya calculada, sustituyendo al que tenga ese ISBN
+     * @param clave ISBN-13 canónico del libro
+     * @param libro el libro a guardar
+     */
+    private void guardar(long clave, Libro libro) {
+        Catalogo c = catalogo;
+        c.almacen.calcular(clave, actual -> {
+            if (actual != null) {
+                c.desindexar(clave, actual);
+            }
+            libro.setVersion(secuenciaVersiones.incrementAndGet());
+            c.indexar(clave, libro);
+            return libro;
+        });
+        versionCatalogo.incrementAndGet();
+    }
+    
+    /**
+     * Resuelve una lista de claves a los libros guardados
+     * @param c catálogo del que salieron las claves
+     * @param claves ISBN-13 canónicos devueltos por un índice
+     * @return lista de libros
+     */
+    private static List<Libro> librosPorIsbn(Catalogo c, List<Long> claves) {
+        List<Libro> libros = new ArrayList<>(claves.size());
+        for (Long clave : claves) {
+            Libro libro = c.almacen.obtener(clave);
+            if (libro != null) {
+                libros.add(libro);
+            }
+        }
+        return libros;
+    }
+    
+    /**
+     * Comparador equivalente al orden de los índices (año o título normalizado, y luego ISBN)
+     * @param orden orden pedido
+     * @return comparador de libros
+     */
+    private static Comparator<Libro> comparador(OrdenLibros orden) {
+        Comparator<Libro> porIsbn = Comparator.comparingLong(libro -> Isbn.aClave(libro.getIsbn()));
+        if (orden == OrdenLibros.ANIO) {
+            return Comparator.comparingInt(Libro::getAnio).thenComparing(porIsbn);
+        }
+        return Comparator.comparing((Libro libro) -> IndiceTrigramas.normalizar(libro.getTitulo())).thenComparing(porIsbn);
+    }
+    
+    /**
+     * Extrae una página de una lista
+     * @param libros lista completa
+     * @param offset número de elementos a saltar
+     * @param limite número máximo de elementos
+     * @return la página pedida
+     */
+    private static List<Libro> pagina(List<Libro> libros, int offset, int limite) {
+        if (offset == 0 && limite >= libros.size()) {
+            return libros;
+        }
+        int desde = Math.min(offset, libros.size());
+        int hasta = (int) Math.min((long) desde + limite, libros.size());
+        return new ArrayList<>(libros.subList(desde, hasta));
     }
     
     /**
      * Valida que un libro tenga todos los campos requeridos
      * @param libro el libro a validar
-     * @throws IllegalArgumentException si faltan campos requeridos
+     * @throws IllegalArgumentException si faltan campos requeridos o algún campo está fuera de rango
      */
     private void validarLibro(Libro libro) {
         if (libro.getIsbn() == null || libro.getIsbn().isEmpty()) {
             throw new IllegalArgumentException("ISBN es requerido");
         }
         
-        if (libro.getTitulo() == null || libro.getTitulo().isEmpty()) {
-            throw new IllegalArgumentException("Título es requerido");
-        }
+        validarLibroActualizacion(libro);
+    }
+    
+    /**
+     * Valida un libro nuevo (campos requeridos e ISBN)
+     * @param libro el libro a validar
+     * @return su ISBN-13 canónico
+     * @throws IllegalArgumentException si faltan campos o el ISBN no es válido
+     */
+    private long validarLibroNuevo(Libro libro) {
+        validarLibro(libro);
         
-        if (libro.getAutor() == null || libro.getAutor().isEmpty()) {
-            throw new IllegalArgumentException("Autor es requerido");
+        long clave = Isbn.aClave(libro.getIsbn());
+        if (clave == Isbn.INVALIDO) {
+            throw new IllegalArgumentException("Formato de ISBN inválido o dígito de control incorrecto");
         }
+        return clave;
     }
     
     /**
      * Valida que un libro tenga los campos requeridos para actualización
      * @param libro el libro a validar
-     * @throws IllegalArgumentException si faltan campos requeridos
+     * @throws IllegalArgumentException si faltan campos requeridos o algún campo está fuera de rango
      */
     private void validarLibroActualizacion(Libro libro) {
         if (libro.getTitulo() == null || libro.getTitulo().isEmpty()) {
@@ -155,20 +863,32 @@ public class BibliotecaService {
         if (libro.getAutor() == null || libro.getAutor().isEmpty()) {
             throw new IllegalArgumentException("Autor es requerido");
         }
+        
+        if (libro.getTitulo().length() > LONGITUD_MAXIMA_TEXTO || libro.getAutor().length() > LONGITUD_MAXIMA_TEXTO) {
+            throw new IllegalArgumentException("Título y autor admiten como máximo " + LONGITUD_MAXIMA_TEXTO + " caracteres");
+        }
+        
+        if (libro.getAnio() < IndiceAnios.ANIO_MINIMO || libro.getAnio() > IndiceAnios.ANIO_MAXIMO) {
+            throw new IllegalArgumentException("El año debe estar entre " + IndiceAnios.ANIO_MINIMO
+                    + " y " + IndiceAnios.ANIO_MAXIMO);
+        }
     }
     
     /**
-     * Valida el formato básico de un ISBN
-     * @param isbn el ISBN a validar
-     * @return true si el formato es válido
+     * Excepción para actualizaciones cuya versión esperada no coincide con la actual
      */
-    private boolean validarISBN(String isbn) {
-        if (isbn == null) return false;
+    public static class PrecondicionFallidaException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
         
-        // Eliminar guiones y espacios para validación
-        String isbnLimpio = isbn.replaceAll("[- ]", "");
+        private long versionActual;
         
-        // Validar que sea ISBN-10 o ISBN-13
-        return isbnLimpio.length() == 10 || isbnLimpio.length() == 13;
+        public PrecondicionFallidaException(String mensaje, long versionActual) {
+            super(mensaje);
+            this.versionActual = versionActual;
+        }
+        
+        public long getVersionActual() {
+            return versionActual;
+        }
     }
 }
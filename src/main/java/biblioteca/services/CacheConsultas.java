@@ -0,0 +1,353 @@
+package biblioteca.services;
+
+import biblioteca.models.EstadisticasCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caché acotada de resultados de consultas con política de expulsión W-TinyLFU.
+ *
+ * Las entradas se reparten en tres listas LRU: una ventana pequeña (1% del peso) que
+ * recibe las entradas nuevas, y la zona principal segmentada en prueba (20%) y protegida
+ * (80%). Cuando una entrada sale de la ventana solo se admite en la principal si se ha
+ * pedido más veces que la víctima a la que desplazaría; la frecuencia se estima con un
+ * sketch Count-Min de 4 filas que se envejece a la mitad periódicamente. Así una ráfaga
+ * de consultas únicas no expulsa a las consultas populares.
+ *
+ * El límite es por peso (cada entrada declara el suyo, por ejemplo el número de libros
+ * del resultado), no por número de entradas.
+ *
+ * Invalidación: cada entrada guarda la versión del catálogo con la que se calculó y solo
+ * se devuelve si coincide con la versión de quien la pide. Las obsoletas (de una versión
+ * anterior) se descartan al leerlas o las acaba expulsando la política; una entrada más
+ * nueva que la versión pedida no se toca, porque quien llega tarde es el lector.
+ *
+ * Concurrencia: las lecturas van a un ConcurrentHashMap sin bloqueo; el orden de las
+ * listas y el sketch se protegen con un único bloqueo que en un acierto solo se intenta
+ * tomar ({@code tryLock}): si está ocupado, ese acceso no se registra, igual que hace
+ * Caffeine con su buffer de lecturas con pérdidas.
+ */
+class CacheConsultas<V> {
+
+    private static final int VENTANA = 0;
+    private static final int PRUEBA = 1;
+    private static final int PROTEGIDA = 2;
+    private static final int ELIMINADA = -1;
+
+    private final ConcurrentHashMap<String, Nodo<V>> entradas = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Frecuencias frecuencias;
+
+    private final Lista<V> ventana = new Lista<>();
+    private final Lista<V> prueba = new Lista<>();
+    private final Lista<V> protegida = new Lista<>();
+
+    private final long pesoMaximo;
+    private final long pesoMaximoVentana;
+    private final long pesoMaximoProtegida;
+    private long pesoVentana;
+    private long pesoPrincipal;
+    private long pesoProtegida;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder expulsiones = new LongAdder();
+    private final LongAdder invalidaciones = new LongAdder();
+
+    /**
+     * @param pesoMaximo peso total máximo de las entradas (0 desactiva la caché)
+     */
+    CacheConsultas(long pesoMaximo) {
+        this.pesoMaximo = Math.max(pesoMaximo, 0);
+        this.pesoMaximoVentana = Math.max(this.pesoMaximo / 100, 1);
+        this.pesoMaximoProtegida = (this.pesoMaximo - pesoMaximoVentana) * 8 / 10;
+        this.frecuencias = new Frecuencias((int) Math.min(Math.max(this.pesoMaximo, 64), 1 << 20));
+    }
+
+    /**
+     * Busca un resultado
+     * @param clave consulta normalizada
+     * @param version versión actual del catálogo
+     * @return el resultado, o null si no está o se calculó con otra versión
+     */
+    V obtener(String clave, long version) {
+        Nodo<V> nodo = entradas.get(clave);
+        if (nodo == null) {
+            fallos.increment();
+            return null;
+        }
+
+        // Un lector con una versión anterior no debe expulsar un resultado ya actualizado
+        if (nodo.version > version) {
+            fallos.increment();
+            return null;
+        }
+
+        if (nodo.version < version) {
+            fallos.increment();
+            invalidaciones.increment();
+            lock.lock();
+            try {
+                if (nodo.zona != ELIMINADA) {
+                    eliminar(nodo);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+
+        aciertos.increment();
+        if (lock.tryLock()) {
+            try {
+                frecuencias.incrementar(clave.hashCode());
+                if (nodo.zona != ELIMINADA) {
+                    alAcceder(nodo);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return nodo.valor;
+    }
+
+    /**
+     * Guarda un resultado recién calculado
+     * @param clave consulta normalizada
+     * @param valor resultado
+     * @param peso peso del resultado (al menos 1)
+     * @param version versión del catálogo leída antes de calcular el resultado
+     */
+    void guardar(String clave, V valor, int peso, long version) {
+        peso = Math.max(peso, 1);
+        lock.lock();
+        try {
+            frecuencias.incrementar(clave.hashCode());
+            if (peso > pesoMaximo - pesoMaximoVentana) {
+                return;
+            }
+
+            Nodo<V> anterior = entradas.get(clave);
+            if (anterior != null) {
+                // Un cálculo lento no sustituye al de una versión posterior
+                if (anterior.version > version) {
+                    return;
+                }
+                eliminar(anterior);
+            }
+
+            Nodo<V> nodo = new Nodo<>(clave, valor, peso, version);
+            entradas.put(clave, nodo);
+            nodo.zona = VENTANA;
+            ventana.agregarPrimero(nodo);
+            pesoVentana += peso;
+
+            // Las entradas que salen de la ventana compiten por entrar en la zona principal
+            while (pesoVentana > pesoMaximoVentana) {
+                Nodo<V> candidato = ventana.ultimo();
+                ventana.quitar(candidato);
+                pesoVentana -= candidato.peso;
+                admitir(candidato);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return estadísticas acumuladas desde el arranque y ocupación actual
+     */
+    EstadisticasCache estadisticas() {
+        lock.lock();
+        try {
+            return new EstadisticasCache(aciertos.sum(), fallos.sum(), expulsiones.sum(),
+                    invalidaciones.sum(), entradas.size(), pesoVentana + pesoPrincipal, pesoMaximo);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Admite en la zona de prueba una entrada que sale de la ventana si es más frecuente
+     * que las víctimas que tiene que desplazar (TinyLFU)
+     */
+    private void admitir(Nodo<V> candidato) {
+        int frecuenciaCandidato = frecuencias.estimar(candidato.clave.hashCode());
+        while (pesoPrincipal + candidato.peso > pesoMaximo - pesoMaximoVentana) {
+            Nodo<V> victima = prueba.ultimo() != null ? prueba.ultimo() : protegida.ultimo();
+            if (victima == null || frecuencias.estimar(victima.clave.hashCode()) >= frecuenciaCandidato) {
+                expulsar(candidato, false);
+                return;
+            }
+            expulsar(victima, true);
+        }
+        candidato.zona = PRUEBA;
+        prueba.agregarPrimero(candidato);
+        pesoPrincipal += candidato.peso;
+    }
+
+    /**
+     * Actualiza la posición de una entrada tras un acierto (LRU segmentado)
+     */
+    private void alAcceder(Nodo<V> nodo) {
+        if (nodo.zona == VENTANA) {
+            ventana.quitar(nodo);
+            ventana.agregarPrimero(nodo);
+        } else if (nodo.zona == PROTEGIDA) {
+            protegida.quitar(nodo);
+            protegida.agregarPrimero(nodo);
+        } else {
+            // De prueba a protegida; si se llena, la menos reciente vuelve a prueba
+            prueba.quitar(nodo);
+            nodo.zona = PROTEGIDA;
+            protegida.agregarPrimero(nodo);
+            pesoProtegida += nodo.peso;
+            while (pesoProtegida > pesoMaximoProtegida) {
+                Nodo<V> degradado = protegida.ultimo();
+                protegida.quitar(degradado);
+                pesoProtegida -= degradado.peso;
+                degradado.zona = PRUEBA;
+                prueba.agregarPrimero(degradado);
+            }
+        }
+    }
+
+    private void expulsar(Nodo<V> nodo, boolean enListas) {
+        if (enListas) {
+            eliminar(nodo);
+        } else {
+            entradas.remove(nodo.clave, nodo);
+            nodo.zona = ELIMINADA;
+        }
+        expulsiones.increment();
+    }
+
+    private void eliminar(Nodo<V> nodo) {
+        entradas.remove(nodo.clave, nodo);
+        if (nodo.zona == VENTANA) {
+            ventana.quitar(nodo);
+            pesoVentana -= nodo.peso;
+        } else if (nodo.zona == PRUEBA) {
+            prueba.quitar(nodo);
+            pesoPrincipal -= nodo.peso;
+        } else if (nodo.zona == PROTEGIDA) {
+            protegida.quitar(nodo);
+            pesoPrincipal -= nodo.peso;
+            pesoProtegida -= nodo.peso;
+        }
+        nodo.zona = ELIMINADA;
+    }
+
+    private static final class Nodo<V> {
+        final String clave;
+        final V valor;
+        final int peso;
+        final long version;
+        int zona;
+        Nodo<V> anterior;
+        Nodo<V> siguiente;
+
+        Nodo(String clave, V valor, int peso, long version) {
+            this.clave = clave;
+            this.valor = valor;
+            this.peso = peso;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Lista doblemente enlazada con centinela: el primero es el más reciente
+     */
+    private static final class Lista<V> {
+        private final Nodo<V> centinela = new Nodo<>(null, null, 0, 0);
+
+        Lista() {
+            centinela.anterior = centinela;
+            centinela.siguiente = centinela;
+        }
+
+        void agregarPrimero(Nodo<V> nodo) {
+            nodo.anterior = centinela;
+            nodo.siguiente = centinela.siguiente;
+            centinela.siguiente.anterior = nodo;
+            centinela.siguiente = nodo;
+        }
+
+        void quitar(Nodo<V> nodo) {
+            nodo.anterior.siguiente = nodo.siguiente;
+            nodo.siguiente.anterior = nodo.anterior;
+            nodo.anterior = null;
+            nodo.siguiente = null;
+        }
+
+        Nodo<V> ultimo() {
+            return centinela.anterior == centinela ? null : centinela.anterior;
+        }
+    }
+
+    /**
+     * Sketch Count-Min con contadores de 4 bits (máximo 15) en 4 filas. Cuando el número
+     * de incrementos llega a 10 veces el ancho, todos los contadores se dividen a la mitad
+     * para que las frecuencias antiguas pierdan peso.
+     */
+    private static final class Frecuencias {
+        private static final long[] SEMILLAS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+        };
+
+        private final long[][] filas;
+        private final int mascara;
+        private final int limiteMuestras;
+        private int muestras;
+
+        Frecuencias(int capacidad) {
+            int ancho = Integer.highestOneBit(Math.max(capacidad - 1, 1)) << 1;
+            this.filas = new long[SEMILLAS.length][(ancho + 15) / 16];
+            this.mascara = ancho - 1;
+            this.limiteMuestras = ancho * 10;
+        }
+
+        void incrementar(int hash) {
+            boolean incrementado = false;
+            for (int fila = 0; fila < filas.length; fila++) {
+                int i = indice(hash, fila);
+                long palabra = filas[fila][i >>> 4];
+                int desplazamiento = (i & 15) << 2;
+                if (((palabra >>> desplazamiento) & 0xF) < 15) {
+                    filas[fila][i >>> 4] = palabra + (1L << desplazamiento);
+                    incrementado = true;
+                }
+            }
+            if (incrementado && ++muestras >= limiteMuestras) {
+                envejecer();
+            }
+        }
+
+        int estimar(int hash) {
+            int minimo = 15;
+            for (int fila = 0; fila < filas.length; fila++) {
+                int i = indice(hash, fila);
+                int contador = (int) ((filas[fila][i >>> 4] >>> ((i & 15) << 2)) & 0xF);
+                minimo = Math.min(minimo, contador);
+            }
+            return minimo;
+        }
+
+        private int indice(int hash, int fila) {
+            long h = (hash + SEMILLAS[fila]) * SEMILLAS[fila];
+            return (int) (h >>> 32) & mascara;
+        }
+
+        private void envejecer() {
+            for (long[] fila : filas) {
+                for (int i = 0; i < fila.length; i++) {
+                    // Dividir entre 2 cada contador de 4 bits a la vez
+                    fila[i] = (fila[i] >>> 1) & 0x7777777777777777L;
+                }
+            }
+            muestras /= 2;
+        }
+    }
+}
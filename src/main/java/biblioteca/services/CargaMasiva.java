@@ -0,0 +1,171 @@
+package biblioteca.services;
+
+import biblioteca.models.Libro;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToLongFunction;
+
+/**
+ * Análisis en paralelo de una carga masiva en formato JSON Lines (un libro en JSON por línea).
+ *
+ * Los datos se dividen en tramos que siempre empiezan al principio de una línea y cada
+ * tramo se analiza y valida en una tarea fork-join. Los resultados se unen de izquierda a
+ * derecha, así que los libros conservan el orden de la entrada y los errores llevan su
+ * número de línea real.
+ */
+class CargaMasiva {
+
+    /** Tamaño de tramo por debajo del cual no se sigue dividiendo */
+    private static final int UMBRAL_BYTES = 256 * 1024;
+
+    /** Número máximo de mensajes de error que se conservan (se cuentan todos) */
+    static final int MAXIMO_ERRORES = 100;
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Resultado del análisis: los libros válidos con sus claves, en orden de entrada,
+     * y los rechazados
+     */
+    static class Analisis {
+        final List<Libro> libros = new ArrayList<>();
+        long[] claves = new long[16];
+        int lineas;
+        int rechazados;
+        final List<String> errores = new ArrayList<>();
+        private final List<Integer> lineasError = new ArrayList<>();
+
+        private void agregar(Libro libro, long clave) {
+            if (libros.size() == claves.length) {
+                claves = Arrays.copyOf(claves, claves.length * 2);
+            }
+            claves[libros.size()] = clave;
+            libros.add(libro);
+        }
+
+        private void rechazar(int linea, String mensaje) {
+            rechazados++;
+            if (errores.size() < MAXIMO_ERRORES) {
+                lineasError.add(linea);
+                errores.add(mensaje);
+            }
+        }
+
+        /**
+         * Agrega a este análisis el del tramo siguiente
+         */
+        private Analisis unir(Analisis siguiente) {
+            int base = libros.size();
+            if (base + siguiente.libros.size() > claves.length) {
+                claves = Arrays.copyOf(claves, base + siguiente.libros.size());
+            }
+            System.arraycopy(siguiente.claves, 0, claves, base, siguiente.libros.size());
+            libros.addAll(siguiente.libros);
+
+            for (int i = 0; i < siguiente.errores.size() && errores.size() < MAXIMO_ERRORES; i++) {
+                lineasError.add(siguiente.lineasError.get(i) + lineas);
+                errores.add(siguiente.errores.get(i));
+            }
+            rechazados += siguiente.rechazados;
+            lineas += siguiente.lineas;
+            return this;
+        }
+
+        /**
+         * @return los mensajes de error con su número de línea (1 = primera línea)
+         */
+        List<String> mensajesError() {
+            List<String> mensajes = new ArrayList<>(errores.size());
+            for (int i = 0; i < errores.size(); i++) {
+                mensajes.add("Línea " + lineasError.get(i) + ": " + errores.get(i));
+            }
+            return mensajes;
+        }
+    }
+
+    /**
+     * Analiza y valida los libros de una entrada JSON Lines. Debe llamarse desde el
+     * ForkJoinPool donde se quiere repartir el trabajo.
+     * @param datos contenido en UTF-8, un objeto JSON por línea (las líneas vacías se ignoran)
+     * @param validador valida un libro y devuelve su ISBN-13 canónico, o lanza
+     *                  IllegalArgumentException si no es válido
+     * @return los libros válidos en orden de entrada y los errores encontrados
+     */
+    static Analisis analizar(byte[] datos, ToLongFunction<Libro> validador) {
+        return new Tramo(datos, 0, datos.length, validador).invoke();
+    }
+
+    private static final class Tramo extends RecursiveTask<Analisis> {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] datos;
+        private final int desde;
+        private final int hasta;
+        private final ToLongFunction<Libro> validador;
+
+        Tramo(byte[] datos, int desde, int hasta, ToLongFunction<Libro> validador) {
+            this.datos = datos;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.validador = validador;
+        }
+
+        @Override
+        protected Analisis compute() {
+            if (hasta - desde > UMBRAL_BYTES) {
+                // Cortar justo después del primer salto de línea a partir de la mitad
+                int medio = finDeLinea(desde + (hasta - desde) / 2);
+                if (medio < hasta) {
+                    Tramo izquierdo = new Tramo(datos, desde, medio, validador);
+                    Tramo derecho = new Tramo(datos, medio, hasta, validador);
+                    izquierdo.fork();
+                    Analisis resultadoDerecho = derecho.compute();
+                    return izquierdo.join().unir(resultadoDerecho);
+                }
+            }
+            return analizarTramo();
+        }
+
+        private Analisis analizarTramo() {
+            Analisis analisis = new Analisis();
+            int inicio = desde;
+            while (inicio < hasta) {
+                int fin = finDeLinea(inicio);
+                int numeroLinea = ++analisis.lineas;
+                String linea = new String(datos, inicio, fin - inicio, StandardCharsets.UTF_8).trim();
+                inicio = fin;
+
+                if (linea.isEmpty()) continue;
+                try {
+                    Libro libro = gson.fromJson(linea, Libro.class);
+                    if (libro == null) {
+                        throw new IllegalArgumentException("Se esperaba un libro en JSON");
+                    }
+                    long clave = validador.applyAsLong(libro);
+                    analisis.agregar(libro, clave);
+                } catch (JsonParseException e) {
+                    analisis.rechazar(numeroLinea, "JSON inválido");
+                } catch (IllegalArgumentException e) {
+                    analisis.rechazar(numeroLinea, e.getMessage());
+                }
+            }
+            return analisis;
+        }
+
+        /**
+         * @return la posición siguiente al salto de línea que sigue a {@code posicion}, o {@code hasta}
+         */
+        private int finDeLinea(int posicion) {
+            while (posicion < hasta && datos[posicion] != '\n') {
+                posicion++;
+            }
+            return Math.min(posicion + 1, hasta);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package biblioteca.services;
+
+import biblioteca.models.Libro;
+
+/**
+ * Estado completo del catálogo: el almacén de libros y los índices de búsqueda que se
+ * mantienen sobre él. El servicio lo publica a través de una sola referencia, así que
+ * una carga masiva puede construir un catálogo nuevo aparte y sustituir el anterior de
+ * una vez: cada lector ve el catálogo anterior o el nuevo, nunca uno a medio construir.
+ *
+ * Los índices usan estructuras primitivas ({@link TablaClaves}, {@link ArbolOrdenado},
+ * {@link ArenaTextos}) sin objetos por libro y, si el almacén está fuera del heap, también
+ * los índices lo están. Ningún índice guarda el texto original: las verificaciones leen el
+ * almacén.
+ */
+class Catalogo {
+
+    final AlmacenLibros almacen;
+    final IndiceTrigramas indiceTitulos;
+    final IndiceTrigramas indiceAutores;
+    final IndicePrefijos prefijosTitulos;
+    final IndicePrefijos prefijosAutores;
+    final IndiceTextoCompleto textoCompleto;
+    final IndiceAnios indiceAnios;
+
+    /**
+     * @param almacen almacén del catálogo
+     * @param enConstruccion si es true, el catálogo aún no tiene lectores: los índices
+     *                       ordenados acumulan las altas (sin admitir bajas) hasta
+     *                       {@link #terminarConstruccion}
+     */
+    Catalogo(AlmacenLibros almacen, boolean enConstruccion) {
+        this.almacen = almacen;
+        boolean fueraDelHeap = almacen.fueraDelHeap();
+        this.indiceTitulos = new IndiceTrigramas(almacen::titulo, fueraDelHeap);
+        this.indiceAutores = new IndiceTrigramas(almacen::autor, fueraDelHeap);
+        this.prefijosTitulos = new IndicePrefijos(fueraDelHeap, enConstruccion);
+        this.prefijosAutores = new IndicePrefijos(fueraDelHeap, enConstruccion);
+        this.textoCompleto = new IndiceTextoCompleto(fueraDelHeap);
+        this.indiceAnios = new IndiceAnios(fueraDelHeap, enConstruccion);
+    }
+
+    /**
+     * Prepara el catálogo para publicarlo: ordena las altas acumuladas por los índices
+     * ordenados y los carga de una vez. Debe llamarse antes de que tenga lectores; si se
+     * llama desde un ForkJoinPool, la ordenación usa sus hilos.
+     */
+    void terminarConstruccion() {
+        prefijosTitulos.terminarConstruccion();
+        prefijosAutores.terminarConstruccion();
+        indiceAnios.terminarConstruccion();
+    }
+
+    /**
+     * Agrega un libro a los índices de búsqueda. Se llama dentro del calcular de su ISBN.
+     * @param clave ISBN-13 canónico del libro
+     * @param libro el libro a indexar
+     */
+    void indexar(long clave, Libro libro) {
+        indexar(clave, libro.getTitulo(), libro.getAutor(), libro.getAnio());
+    }
+
+    /**
+     * Agrega un libro a los índices a partir de sus campos, sin necesidad de un {@link Libro}
+     * @param clave ISBN-13 canónico del libro
+     * @param titulo título del libro
+     * @param autor autor del libro
+     * @param anio año de publicación
+     */
+    void indexar(long clave, String titulo, String autor, int anio) {
+        indiceTitulos.agregar(clave, titulo);
+        indiceAutores.agregar(clave, autor);
+        prefijosTitulos.agregar(clave, titulo, anio);
+        prefijosAutores.agregar(clave, autor, anio);
+        textoCompleto.agregar(clave, titulo, autor);
+        indiceAnios.agregar(clave, anio);
+    }
+
+    /**
+     * Quita un libro de los índices de búsqueda. Se llama dentro del calcular de su ISBN.
+     * @param clave ISBN-13 canónico del libro
+     * @param libro el libro tal como está indexado
+     */
+    void desindexar(long clave, Libro libro) {
+        indiceTitulos.eliminar(clave, libro.getTitulo());
+        indiceAutores.eliminar(clave, libro.getAutor());
+        prefijosTitulos.eliminar(clave, libro.getTitulo());
+        prefijosAutores.eliminar(clave, libro.getAutor());
+        textoCompleto.eliminar(clave, libro.getTitulo(), libro.getAutor());
+        indiceAnios.eliminar(clave, libro.getAnio());
+    }
+
+    /**
+     * Guarda un libro que no está en este catálogo y lo indexa. Lo usa la carga masiva
+     * para llenar un catálogo nuevo, aún sin publicar; es seguro llamarlo en paralelo con
+     * claves distintas. Se indexa fuera del calcular para no retener el bloqueo de la
+     * clave mientras se construyen los índices.
+     * @param clave ISBN-13 canónico del libro
+     * @param libro el libro a guardar
+     */
+    void agregar(long clave, Libro libro) {
+        almacen.calcular(clave, actual -> libro);
+        indexar(clave, libro);
+    }
+}
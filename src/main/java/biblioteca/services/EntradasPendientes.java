@@ -0,0 +1,52 @@
+package biblioteca.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entradas que varios hilos agregan a la vez mientras se construye un índice ordenado, para
+ * ordenarlas y cargarlas de una vez al terminar ({@link ArbolOrdenado#cargarOrdenadas}).
+ *
+ * Las entradas se reparten en franjas según el hilo, cada una con su propio bloqueo, así
+ * que los hilos de una carga masiva casi nunca esperan entre sí; insertar una a una en el
+ * árbol, en cambio, los serializaría a todos. El orden en que quedan no importa: quien las
+ * recoge las ordena.
+ *
+ * @param <T> tipo de las entradas
+ */
+final class EntradasPendientes<T> {
+
+    private static final int FRANJAS = 64;
+
+    private final List<List<T>> franjas = new ArrayList<>(FRANJAS);
+
+    EntradasPendientes() {
+        for (int i = 0; i < FRANJAS; i++) {
+            franjas.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * @param entrada entrada a agregar
+     */
+    void agregar(T entrada) {
+        List<T> franja = franjas.get((int) Thread.currentThread().getId() & (FRANJAS - 1));
+        synchronized (franja) {
+            franja.add(entrada);
+        }
+    }
+
+    /**
+     * Recoge las entradas agregadas. Debe llamarse cuando ya no hay hilos agregando.
+     * @return todas las entradas, en un orden cualquiera
+     */
+    List<T> todas() {
+        List<T> resultado = new ArrayList<>();
+        for (List<T> franja : franjas) {
+            synchronized (franja) {
+                resultado.addAll(franja);
+            }
+        }
+        return resultado;
+    }
+}
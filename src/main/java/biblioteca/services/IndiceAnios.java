@@ -0,0 +1,164 @@
+package biblioteca.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Índice ordenado por año de publicación. Cada entrada es un {@code long} que combina
+ * año e ISBN-13 ({@code anio << 44 | isbn}; un ISBN-13 cabe en 44 bits), de modo que el
+ * orden natural es por año y, a igual año, por ISBN. Las entradas están en un
+ * {@link ArbolOrdenado}: una consulta por rango es un descenso en el árbol, un salto de
+ * O(log n) hasta el offset y el recorrido de la página: O(log n + k). Las lecturas no
+ * toman bloqueos y ven una instantánea del índice.
+ *
+ * El año ocupa 20 bits: el índice solo admite años entre {@link #ANIO_MINIMO} y
+ * {@link #ANIO_MAXIMO}, y el servicio rechaza los libros fuera de ese rango.
+ */
+class IndiceAnios {
+
+    static final int ANIO_MINIMO = -(1 << 19);
+    static final int ANIO_MAXIMO = (1 << 19) - 1;
+
+    private static final int BITS_ISBN = 44;
+    private static final long MASCARA_ISBN = (1L << BITS_ISBN) - 1;
+
+    private final ArbolOrdenado entradas;
+
+    /** Claves agregadas durante la construcción, o null si el índice ya está terminado */
+    private EntradasPendientes<Long> pendientes;
+
+    /**
+     * @param fueraDelHeap si es true, las entradas se guardan en memoria directa
+     * @param enConstruccion si es true, el índice aún no tiene lectores: las altas se
+     *                       acumulan y se ordenan en {@link #terminarConstruccion}
+     */
+    IndiceAnios(boolean fueraDelHeap, boolean enConstruccion) {
+        this.entradas = new ArbolOrdenado(1, fueraDelHeap);
+        this.pendientes = enConstruccion ? new EntradasPendientes<>() : null;
+    }
+
+    /**
+     * Ordena las claves acumuladas y las carga en el árbol. A partir de aquí cada alta se
+     * inserta en el árbol. Debe llamarse antes de que el índice tenga lectores.
+     */
+    void terminarConstruccion() {
+        if (pendientes == null) return;
+
+        List<Long> todas = pendientes.todas();
+        long[] claves = new long[todas.size()];
+        for (int i = 0; i < claves.length; i++) {
+            claves[i] = todas.get(i);
+        }
+        Arrays.parallelSort(claves);
+        int distintas = 0;
+        for (int i = 0; i < claves.length; i++) {
+            if (distintas == 0 || claves[i] != claves[distintas - 1]) {
+                claves[distintas++] = claves[i];
+            }
+        }
+        entradas.cargarOrdenadas(claves, distintas);
+        pendientes = null;
+    }
+
+    /**
+     * Indexa el año de un libro
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param anio año de publicación
+     */
+    void agregar(long isbn, int anio) {
+        long clave = clave(anio, isbn);
+        EntradasPendientes<Long> acumuladas = pendientes;
+        if (acumuladas != null) {
+            acumuladas.agregar(clave);
+            return;
+        }
+        entradas.agregar(clave, 0, sonda(clave));
+    }
+
+    /**
+     * Quita un libro del índice
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param anio año con el que se indexó
+     * @throws IllegalStateException si el índice está en construcción
+     */
+    void eliminar(long isbn, int anio) {
+        if (pendientes != null) {
+            throw new IllegalStateException("No se puede quitar un libro de un índice en construcción");
+        }
+        entradas.quitar(sonda(clave(anio, isbn)));
+    }
+
+    /**
+     * Recorre en orden de año los libros publicados entre dos años (ambos incluidos)
+     * @param desde primer año del rango
+     * @param hasta último año del rango
+     * @param offset número de entradas a saltar
+     * @param limite número máximo de entradas a devolver
+     * @return claves (ISBN-13 canónico) en orden de año
+     */
+    List<Long> rango(int desde, int hasta, int offset, int limite) {
+        List<Long> resultado = new ArrayList<>(Math.min(limite, 64));
+        if (Math.max(desde, ANIO_MINIMO) > Math.min(hasta, ANIO_MAXIMO)) {
+            return resultado;
+        }
+
+        long ultima = clave(hasta, MASCARA_ISBN);
+        ArbolOrdenado.Vista vista = entradas.vista();
+        int inicio = vista.posicion(sonda(clave(desde, 0)));
+        vista.recorrer((int) Math.min((long) inicio + offset, Integer.MAX_VALUE), (entrada, sin) -> {
+            if (entrada > ultima || resultado.size() >= limite) return false;
+            resultado.add(isbn(entrada));
+            return true;
+        });
+        return resultado;
+    }
+
+    /**
+     * Cuenta los libros publicados entre dos años (ambos incluidos) en O(log n)
+     * @param desde primer año del rango
+     * @param hasta último año del rango
+     * @return número de libros del rango
+     */
+    int contar(int desde, int hasta) {
+        if (Math.max(desde, ANIO_MINIMO) > Math.min(hasta, ANIO_MAXIMO)) {
+            return 0;
+        }
+
+        long ultima = clave(hasta, MASCARA_ISBN);
+        ArbolOrdenado.Vista vista = entradas.vista();
+        return vista.posicion((entrada, sin) -> entrada <= ultima ? -1 : 1) - vista.posicion(sonda(clave(desde, 0)));
+    }
+
+    private static ArbolOrdenado.Sonda sonda(long clave) {
+        return (entrada, sin) -> Long.compare(entrada, clave);
+    }
+
+    /**
+     * @param clave clave formada con {@link #clave}
+     * @return su año
+     */
+    static int anio(long clave) {
+        return (int) (clave >> BITS_ISBN);
+    }
+
+    /**
+     * @param clave clave formada con {@link #clave}
+     * @return su ISBN-13 canónico
+     */
+    static long isbn(long clave) {
+        return clave & MASCARA_ISBN;
+    }
+
+    /**
+     * Forma la clave de un año e ISBN. Los años de una consulta se acotan al rango del
+     * índice, que no contiene ninguno fuera de él.
+     * @param anio año
+     * @param isbn ISBN-13 canónico
+     * @return {@code anio << 44 | isbn}
+     */
+    static long clave(int anio, long isbn) {
+        long acotado = Math.max(ANIO_MINIMO, Math.min(ANIO_MAXIMO, anio));
+        return (acotado << BITS_ISBN) | isbn;
+    }
+}
@@ -0,0 +1,326 @@
+package biblioteca.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Índice ordenado de textos normalizados (títulos o autores) para búsquedas por prefijo.
+ *
+ * Cada entrada son dos palabras en un {@link ArbolOrdenado}: la referencia al texto
+ * normalizado en una {@link ArenaTextos} y el año con el ISBN-13 (como en
+ * {@link IndiceAnios}), para filtrar por año sin leer el almacén. El orden es por texto y,
+ * a igual texto, por ISBN, así que los libros con el mismo texto quedan contiguos y una búsqueda
+ * por prefijo es un descenso en el árbol seguido de un recorrido de las entradas que
+ * coinciden: O(log n + N) sin recorrer el catálogo. Los textos se comparan directamente en
+ * la arena, sin decodificarlos. Las lecturas no toman bloqueos y ven una instantánea del
+ * índice.
+ *
+ * Durante la construcción (una carga masiva, la apertura de un almacén) las altas solo se
+ * acumulan; al terminar se ordenan, los textos se escriben en la arena en ese orden (una
+ * sola vez cada texto repetido) y el árbol se carga de una vez.
+ *
+ * Después, un alta cuyo texto ya está en el índice reutiliza su referencia, así que cada
+ * texto distinto está una sola vez en la arena; cuando se quita la última entrada de un
+ * texto, sus bytes quedan muertos. Si los bytes muertos pasan de 1 MB y superan a los vivos,
+ * el índice se compacta: copia los textos vivos a una arena nueva en un recorrido ordenado y
+ * carga un árbol nuevo con {@link ArbolOrdenado#cargarOrdenadas}. La arena y el árbol se
+ * publican juntos en una sola referencia, así que las lecturas en curso terminan sobre los
+ * anteriores. Las altas y bajas se serializan entre sí, como ya hacía el árbol.
+ */
+class IndicePrefijos {
+
+    private static final Comparator<Pendiente> ORDEN = Comparator.<Pendiente, String>comparing(p -> p.texto)
+            .thenComparingLong(p -> IndiceAnios.isbn(p.clave));
+
+    /** Bytes muertos de la arena por debajo de los cuales no se compacta */
+    private static final long MINIMO_COMPACTAR = 1 << 20;
+
+    private final boolean fueraDelHeap;
+    private volatile Estado estado;
+    /** Bytes de la arena de {@link #estado} con textos que ya no están en el índice */
+    private long bytesMuertos;
+
+    /** Altas acumuladas durante la construcción, o null si el índice ya está terminado */
+    private EntradasPendientes<Pendiente> pendientes;
+
+    /**
+     * La arena y el árbol que la referencia, que se sustituyen juntos al compactar
+     */
+    private static final class Estado {
+        final ArenaTextos textos;
+        final ArbolOrdenado entradas;
+
+        Estado(ArenaTextos textos, ArbolOrdenado entradas) {
+            this.textos = textos;
+            this.entradas = entradas;
+        }
+    }
+
+    /**
+     * Un alta acumulada durante la construcción
+     */
+    private static final class Pendiente {
+        /** Texto normalizado */
+        final String texto;
+        /** Año e ISBN-13, como en {@link IndiceAnios#clave} */
+        final long clave;
+
+        Pendiente(String texto, long clave) {
+            this.texto = texto;
+            this.clave = clave;
+        }
+    }
+
+    /**
+     * Una entrada encontrada por {@link #buscar}
+     */
+    static class Coincidencia {
+        /** Texto normalizado */
+        final String texto;
+        /** ISBN-13 canónico del libro */
+        final long isbn;
+
+        Coincidencia(String texto, long isbn) {
+            this.texto = texto;
+            this.isbn = isbn;
+        }
+    }
+
+    /**
+     * @param fueraDelHeap si es true, los textos y las entradas se guardan en memoria directa
+     * @param enConstruccion si es true, el índice aún no tiene lectores: las altas se
+     *                       acumulan y se ordenan en {@link #terminarConstruccion}
+     */
+    IndicePrefijos(boolean fueraDelHeap, boolean enConstruccion) {
+        this.fueraDelHeap = fueraDelHeap;
+        this.estado = new Estado(new ArenaTextos(fueraDelHeap), new ArbolOrdenado(2, fueraDelHeap));
+        this.pendientes = enConstruccion ? new EntradasPendientes<>() : null;
+    }
+
+    /**
+     * Ordena las altas acumuladas, escribe sus textos en la arena y las carga en el árbol.
+     * A partir de aquí cada alta se inserta en el árbol. Debe llamarse antes de que el
+     * índice tenga lectores.
+     */
+    void terminarConstruccion() {
+        if (pendientes == null) return;
+
+        ArenaTextos textos = estado.textos;
+        Pendiente[] todas = pendientes.todas().toArray(new Pendiente[0]);
+        Arrays.parallelSort(todas, ORDEN);
+        long[] datos = new long[todas.length * 2];
+        int cantidad = 0;
+        String anterior = null;
+        long referencia = 0;
+        for (Pendiente p : todas) {
+            if (!p.texto.equals(anterior)) {
+                referencia = textos.agregar(p.texto);
+                anterior = p.texto;
+            } else if (IndiceAnios.isbn(datos[cantidad * 2 - 1]) == IndiceAnios.isbn(p.clave)) {
+                continue;
+            }
+            datos[cantidad * 2] = referencia;
+            datos[cantidad * 2 + 1] = p.clave;
+            cantidad++;
+        }
+        estado.entradas.cargarOrdenadas(datos, cantidad);
+        pendientes = null;
+    }
+
+    /**
+     * Indexa el texto de un libro
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param texto texto original (se normaliza internamente)
+     * @param anio año de publicación
+     */
+    void agregar(long isbn, String texto, int anio) {
+        String normalizado = IndiceTrigramas.normalizar(texto);
+        EntradasPendientes<Pendiente> acumuladas = pendientes;
+        if (acumuladas != null) {
+            acumuladas.agregar(new Pendiente(normalizado, IndiceAnios.clave(anio, isbn)));
+            return;
+        }
+
+        synchronized (this) {
+            Estado e = estado;
+            long referencia = referencia(e, normalizado);
+            if (referencia < 0) {
+                referencia = e.textos.agregar(normalizado);
+            }
+            e.entradas.agregar(referencia, IndiceAnios.clave(anio, isbn), sonda(e.textos, normalizado, isbn));
+        }
+    }
+
+    /**
+     * Quita un libro del índice
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param texto texto con el que se indexó
+     * @throws IllegalStateException si el índice está en construcción
+     */
+    void eliminar(long isbn, String texto) {
+        if (pendientes != null) {
+            throw new IllegalStateException("No se puede quitar un libro de un índice en construcción");
+        }
+        String normalizado = IndiceTrigramas.normalizar(texto);
+        synchronized (this) {
+            Estado e = estado;
+            long referencia = referencia(e, normalizado);
+            if (!e.entradas.quitar(sonda(e.textos, normalizado, isbn)) || referencia(e, normalizado) >= 0) {
+                return;
+            }
+
+            // Era la última entrada con ese texto
+            bytesMuertos += ArenaTextos.longitud(referencia);
+            if (bytesMuertos > MINIMO_COMPACTAR && bytesMuertos > e.textos.escritos() - bytesMuertos) {
+                compactar(e);
+            }
+        }
+    }
+
+    /**
+     * Copia los textos vivos a una arena nueva, en orden y una vez cada uno, carga las
+     * entradas con sus referencias nuevas en un árbol nuevo y publica ambos. Cuesta
+     * O(entradas) y se llama con el monitor del índice.
+     */
+    private void compactar(Estado anterior) {
+        ArbolOrdenado.Vista vista = anterior.entradas.vista();
+        ArenaTextos textos = new ArenaTextos(fueraDelHeap);
+        long[] datos = new long[vista.tamanio() * 2];
+        int[] cantidad = {0};
+        long[] ultima = {-1, 0};
+        vista.recorrer(0, (referencia, clave) -> {
+            if (referencia != ultima[0]) {
+                ultima[0] = referencia;
+                ultima[1] = textos.copiar(anterior.textos, referencia);
+            }
+            datos[cantidad[0] * 2] = ultima[1];
+            datos[cantidad[0] * 2 + 1] = clave;
+            cantidad[0]++;
+            return true;
+        });
+
+        ArbolOrdenado entradas = new ArbolOrdenado(2, fueraDelHeap);
+        entradas.cargarOrdenadas(datos, cantidad[0]);
+        estado = new Estado(textos, entradas);
+        System.out.println("Índice de prefijos compactado: " + anterior.textos.escritos() + " -> "
+                + textos.escritos() + " bytes de texto");
+        bytesMuertos = 0;
+    }
+
+    /**
+     * @return la referencia del texto si alguna entrada del índice lo tiene, o -1
+     */
+    private static long referencia(Estado e, String normalizado) {
+        ArbolOrdenado.Vista vista = e.entradas.vista();
+        int posicion = vista.posicion((referencia, datos) -> e.textos.comparar(referencia, normalizado, false));
+        long[] encontrada = {-1};
+        vista.recorrer(posicion, (referencia, datos) -> {
+            if (e.textos.comparar(referencia, normalizado, false) == 0) {
+                encontrada[0] = referencia;
+            }
+            return false;
+        });
+        return encontrada[0];
+    }
+
+    /**
+     * Busca las entradas cuyo texto empieza por el prefijo, en orden alfabético
+     * @param prefijo prefijo a buscar (se normaliza internamente)
+     * @param limite número máximo de entradas
+     * @param agrupar si es true, devuelve una sola entrada por texto distinto
+     * @return las entradas encontradas
+     */
+    List<Coincidencia> buscar(String prefijo, int limite, boolean agrupar) {
+        String p = IndiceTrigramas.normalizar(prefijo);
+        List<Coincidencia> resultado = new ArrayList<>(Math.min(limite, 64));
+        Estado e = estado;
+        ArenaTextos textos = e.textos;
+        ArbolOrdenado.Vista vista = e.entradas.vista();
+        int posicion = vista.posicion((referencia, datos) -> textos.comparar(referencia, p, true));
+
+        if (!agrupar) {
+            vista.recorrer(posicion, (referencia, datos) -> {
+                if (resultado.size() >= limite || textos.comparar(referencia, p, true) != 0) {
+                    return false;
+                }
+                resultado.add(new Coincidencia(textos.texto(referencia), IndiceAnios.isbn(datos)));
+                return true;
+            });
+            return resultado;
+        }
+
+        // Tomar la primera entrada de cada texto y saltar el resto de libros con ese texto
+        Coincidencia[] encontrada = new Coincidencia[1];
+        while (resultado.size() < limite) {
+            encontrada[0] = null;
+            vista.recorrer(posicion, (referencia, datos) -> {
+                if (textos.comparar(referencia, p, true) == 0) {
+                    encontrada[0] = new Coincidencia(textos.texto(referencia), IndiceAnios.isbn(datos));
+                }
+                return false;
+            });
+            if (encontrada[0] == null) break;
+
+            resultado.add(encontrada[0]);
+            String texto = encontrada[0].texto;
+            posicion = vista.posicion((referencia, datos) -> {
+                int c = textos.comparar(referencia, texto, false);
+                return c != 0 ? c : -1;
+            });
+        }
+        return resultado;
+    }
+
+    /**
+     * Recorre el índice completo en orden alfabético
+     * @param offset número de entradas a saltar
+     * @param limite número máximo de entradas a devolver
+     * @return claves (ISBN-13 canónico) en orden alfabético del texto
+     */
+    List<Long> enOrden(int offset, int limite) {
+        List<Long> resultado = new ArrayList<>(Math.min(limite, 64));
+        estado.entradas.vista().recorrer(offset, (referencia, datos) -> {
+            if (resultado.size() >= limite) return false;
+            resultado.add(IndiceAnios.isbn(datos));
+            return true;
+        });
+        return resultado;
+    }
+
+    /**
+     * Recorre en orden alfabético los libros publicados entre dos años (ambos incluidos),
+     * filtrando por el año guardado en cada entrada. Cuesta O(log n + k·n/m), donde m es el
+     * número de libros del rango: conviene cuando el rango abarca buena parte del catálogo.
+     * @param desde primer año del rango
+     * @param hasta último año del rango
+     * @param offset número de libros del rango a saltar
+     * @param limite número máximo de libros a devolver
+     * @return claves (ISBN-13 canónico) en orden alfabético del texto
+     */
+    List<Long> enOrden(int desde, int hasta, int offset, int limite) {
+        List<Long> resultado = new ArrayList<>(Math.min(limite, 64));
+        int[] saltar = {offset};
+        estado.entradas.vista().recorrer(0, (referencia, datos) -> {
+            if (resultado.size() >= limite) return false;
+            int anio = IndiceAnios.anio(datos);
+            if (anio >= desde && anio <= hasta) {
+                if (saltar[0] > 0) {
+                    saltar[0]--;
+                } else {
+                    resultado.add(IndiceAnios.isbn(datos));
+                }
+            }
+            return true;
+        });
+        return resultado;
+    }
+
+    private static ArbolOrdenado.Sonda sonda(ArenaTextos textos, String normalizado, long isbn) {
+        return (referencia, datos) -> {
+            int c = textos.comparar(referencia, normalizado, false);
+            return c != 0 ? c : Long.compare(IndiceAnios.isbn(datos), isbn);
+        };
+    }
+}
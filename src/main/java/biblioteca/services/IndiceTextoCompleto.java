@@ -0,0 +1,205 @@
+package biblioteca.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice de texto completo sobre título y autor con puntuación BM25.
+ *
+ * Guarda, por cada término, la frecuencia en cada libro, y por cada libro su longitud en
+ * términos, en {@link TablaClaves} (un {@code long} por ISBN con la frecuencia o la
+ * longitud en los bits altos; en memoria directa si el catálogo está fuera del heap).
+ * Todo se actualiza de forma incremental en las altas, modificaciones y bajas,
+ * así que el IDF y la longitud media están siempre al día sin recalcular nada. Para
+ * paginar se seleccionan los k mejores con un montículo acotado en lugar de ordenar
+ * todas las coincidencias.
+ *
+ * Igual que los otros índices, las búsquedas no toman bloqueos y las altas y bajas de un
+ * mismo ISBN deben estar serializadas por quien llama.
+ */
+class IndiceTextoCompleto {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final Map<String, TablaClaves> postings = new ConcurrentHashMap<>();
+    private final TablaClaves longitudes;
+    private final AtomicLong totalTerminos = new AtomicLong();
+    private final boolean fueraDelHeap;
+
+    /**
+     * @param fueraDelHeap si es true, las listas grandes se guardan en memoria directa
+     */
+    IndiceTextoCompleto(boolean fueraDelHeap) {
+        this.fueraDelHeap = fueraDelHeap;
+        this.longitudes = new TablaClaves(fueraDelHeap);
+    }
+
+    /**
+     * Resultado de una búsqueda: una página de claves ordenadas por relevancia y
+     * el número total de libros que coinciden
+     */
+    static class Resultado {
+        final List<Long> claves;
+        final int total;
+
+        Resultado(List<Long> claves, int total) {
+            this.claves = claves;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Indexa el título y el autor de un libro
+     * @param isbn clave del libro (ISBN-13 canónico)
+     */
+    void agregar(long isbn, String titulo, String autor) {
+        Map<String, Integer> frecuencias = frecuencias(titulo, autor);
+        int longitud = 0;
+        for (Map.Entry<String, Integer> entrada : frecuencias.entrySet()) {
+            int tf = entrada.getValue();
+            longitud += tf;
+            postings.compute(entrada.getKey(), (t, lista) -> {
+                if (lista == null) {
+                    lista = new TablaClaves(fueraDelHeap);
+                }
+                lista.poner(isbn, tf);
+                return lista;
+            });
+        }
+        // Se acota igual que al guardarla, para que la baja reste lo mismo que sumó el alta
+        longitud = Math.min(longitud, TablaClaves.VALOR_MAXIMO);
+        longitudes.poner(isbn, longitud);
+        totalTerminos.addAndGet(longitud);
+    }
+
+    /**
+     * Quita un libro del índice
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param titulo título con el que se indexó
+     * @param autor autor con el que se indexó
+     */
+    void eliminar(long isbn, String titulo, String autor) {
+        int longitud = longitudes.obtener(isbn);
+        if (longitud < 0) return;
+        longitudes.quitar(isbn);
+        totalTerminos.addAndGet(-longitud);
+
+        for (String termino : frecuencias(titulo, autor).keySet()) {
+            // Quitar la lista vacía dentro del mismo compute evita perder un alta concurrente
+            postings.computeIfPresent(termino, (t, lista) -> {
+                lista.quitar(isbn);
+                return lista.tamanio() == 0 ? null : lista;
+            });
+        }
+    }
+
+    /**
+     * Busca los libros más relevantes para una consulta
+     * @param consulta texto libre
+     * @param offset número de resultados a saltar
+     * @param limite número máximo de resultados a devolver
+     * @return la página pedida, ordenada por puntuación descendente
+     */
+    Resultado buscar(String consulta, int offset, int limite) {
+        Set<String> terminos = new LinkedHashSet<>(tokenizar(consulta));
+        if (terminos.isEmpty()) {
+            return new Resultado(Collections.emptyList(), 0);
+        }
+
+        int documentos = Math.max(longitudes.tamanio(), 1);
+        double longitudMedia = Math.max((double) totalTerminos.get() / documentos, 1.0);
+
+        Map<Long, double[]> puntuaciones = new HashMap<>();
+        for (String termino : terminos) {
+            TablaClaves lista = postings.get(termino);
+            if (lista == null) continue;
+
+            long[] entradas = lista.copiar();
+            int df = entradas.length;
+            double idf = Math.log(1 + (documentos - df + 0.5) / (df + 0.5));
+            for (long entrada : entradas) {
+                long isbn = TablaClaves.clave(entrada);
+                int longitud = longitudes.obtener(isbn);
+                if (longitud < 0) continue;
+
+                int tf = TablaClaves.valor(entrada);
+                double norma = K1 * (1 - B + B * longitud / longitudMedia);
+                double puntuacion = idf * tf * (K1 + 1) / (tf + norma);
+                puntuaciones.computeIfAbsent(isbn, clave -> new double[1])[0] += puntuacion;
+            }
+        }
+
+        // Montículo de mínimos con los offset + limite mejores: O(n log k)
+        int k = offset + limite;
+        PriorityQueue<Map.Entry<Long, double[]>> mejores = new PriorityQueue<>(Math.min(k, 1024) + 1,
+                (a, b) -> comparar(a.getValue()[0], a.getKey(), b.getValue()[0], b.getKey()));
+        for (Map.Entry<Long, double[]> entrada : puntuaciones.entrySet()) {
+            if (mejores.size() < k) {
+                mejores.add(entrada);
+            } else {
+                Map.Entry<Long, double[]> peor = mejores.peek();
+                if (comparar(entrada.getValue()[0], entrada.getKey(), peor.getValue()[0], peor.getKey()) > 0) {
+                    mejores.poll();
+                    mejores.add(entrada);
+                }
+            }
+        }
+
+        // Vaciar el montículo (de peor a mejor) y quedarse con la página pedida
+        int enPagina = Math.max(mejores.size() - offset, 0);
+        Long[] pagina = new Long[enPagina];
+        while (mejores.size() > offset) {
+            pagina[mejores.size() - offset - 1] = mejores.poll().getKey();
+        }
+        List<Long> claves = new ArrayList<>(enPagina);
+        Collections.addAll(claves, pagina);
+        return new Resultado(claves, puntuaciones.size());
+    }
+
+    /**
+     * Orden por puntuación y, a igual puntuación, por ISBN (menor ISBN es mejor)
+     */
+    private static int comparar(double puntuacionA, long isbnA, double puntuacionB, long isbnB) {
+        int porPuntuacion = Double.compare(puntuacionA, puntuacionB);
+        return porPuntuacion != 0 ? porPuntuacion : Long.compare(isbnB, isbnA);
+    }
+
+    private static Map<String, Integer> frecuencias(String titulo, String autor) {
+        Map<String, Integer> frecuencias = new HashMap<>();
+        for (String termino : tokenizar(titulo)) {
+            frecuencias.merge(termino, 1, Integer::sum);
+        }
+        for (String termino : tokenizar(autor)) {
+            frecuencias.merge(termino, 1, Integer::sum);
+        }
+        return frecuencias;
+    }
+
+    /**
+     * Divide un texto en términos: secuencias de letras o dígitos, en minúsculas
+     */
+    static List<String> tokenizar(String texto) {
+        List<String> terminos = new ArrayList<>();
+        int inicio = -1;
+        for (int i = 0; i <= texto.length(); i++) {
+            boolean esParte = i < texto.length() && Character.isLetterOrDigit(texto.charAt(i));
+            if (esParte && inicio < 0) {
+                inicio = i;
+            } else if (!esParte && inicio >= 0) {
+                terminos.add(texto.substring(inicio, i).toLowerCase(Locale.ROOT));
+                inicio = -1;
+            }
+        }
+        return terminos;
+    }
+}
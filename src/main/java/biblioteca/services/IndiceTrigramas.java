@@ -0,0 +1,141 @@
+package biblioteca.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * Índice invertido de trigramas sobre un campo de texto (título o autor).
+ * Cada trigrama del texto normalizado apunta a los ISBN que lo contienen; una búsqueda
+ * por subcadena intersecta las listas de sus trigramas y verifica los candidatos con
+ * {@code contains} sobre el texto guardado en el almacén, así que el resultado es el mismo
+ * que el de un recorrido completo. El índice no guarda copia de los textos.
+ *
+ * Las listas son {@link TablaClaves} (un {@code long} por ISBN, en memoria directa si el
+ * catálogo está fuera del heap). Es seguro para uso concurrente: las búsquedas no toman
+ * bloqueos y cada lista se modifica de forma atómica. Las altas y bajas de un mismo ISBN
+ * deben estar serializadas por quien llama (el servicio lo hace dentro del calcular del
+ * almacén).
+ */
+class IndiceTrigramas {
+
+    private final Map<Long, TablaClaves> postings = new ConcurrentHashMap<>();
+    /** ISBN de todos los libros indexados, para las consultas sin trigramas */
+    private final TablaClaves indexados;
+    private final LongFunction<String> textos;
+    private final boolean fueraDelHeap;
+
+    /**
+     * @param textos devuelve el texto guardado de un libro (o null si ya no está)
+     * @param fueraDelHeap si es true, las listas grandes se guardan en memoria directa
+     */
+    IndiceTrigramas(LongFunction<String> textos, boolean fueraDelHeap) {
+        this.textos = textos;
+        this.fueraDelHeap = fueraDelHeap;
+        this.indexados = new TablaClaves(fueraDelHeap);
+    }
+
+    /**
+     * Indexa el texto de un libro
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param texto texto original (se normaliza internamente)
+     */
+    void agregar(long isbn, String texto) {
+        String normalizado = normalizar(texto);
+        indexados.poner(isbn, 0);
+
+        for (int i = 0; i + 3 <= normalizado.length(); i++) {
+            postings.compute(trigrama(normalizado, i), (t, lista) -> {
+                if (lista == null) {
+                    lista = new TablaClaves(fueraDelHeap);
+                }
+                lista.poner(isbn, 0);
+                return lista;
+            });
+        }
+    }
+
+    /**
+     * Quita un libro del índice
+     * @param isbn clave del libro (ISBN-13 canónico)
+     * @param texto texto con el que se indexó
+     */
+    void eliminar(long isbn, String texto) {
+        String normalizado = normalizar(texto);
+        indexados.quitar(isbn);
+
+        for (int i = 0; i + 3 <= normalizado.length(); i++) {
+            // Quitar la lista vacía dentro del mismo compute evita perder un alta concurrente
+            postings.computeIfPresent(trigrama(normalizado, i), (t, lista) -> {
+                lista.quitar(isbn);
+                return lista.tamanio() == 0 ? null : lista;
+            });
+        }
+    }
+
+    /**
+     * Busca los libros cuyo texto contiene la consulta (case-insensitive)
+     * @param consulta texto a buscar
+     * @return claves (ISBN-13 canónico) de los libros que coinciden
+     */
+    List<Long> buscar(String consulta) {
+        String q = normalizar(consulta);
+        List<Long> resultado = new ArrayList<>();
+
+        // Con menos de tres caracteres no hay trigramas: se recorren todos los libros indexados
+        if (q.length() < 3) {
+            for (long entrada : indexados.copiar()) {
+                long isbn = TablaClaves.clave(entrada);
+                if (contiene(isbn, q)) {
+                    resultado.add(isbn);
+                }
+            }
+            return resultado;
+        }
+
+        int cantidad = q.length() - 2;
+        List<TablaClaves> listas = new ArrayList<>(cantidad);
+        TablaClaves menor = null;
+        for (int i = 0; i < cantidad; i++) {
+            TablaClaves lista = postings.get(trigrama(q, i));
+            if (lista == null) {
+                return resultado;
+            }
+            listas.add(lista);
+            if (menor == null || lista.tamanio() < menor.tamanio()) {
+                menor = lista;
+            }
+        }
+
+        // Intersección partiendo de la lista más corta y verificación final del candidato
+        candidatos:
+        for (long entrada : menor.copiar()) {
+            long isbn = TablaClaves.clave(entrada);
+            for (TablaClaves lista : listas) {
+                if (lista != menor && !lista.contiene(isbn)) {
+                    continue candidatos;
+                }
+            }
+            if (contiene(isbn, q)) {
+                resultado.add(isbn);
+            }
+        }
+        return resultado;
+    }
+
+    static String normalizar(String texto) {
+        return texto.toLowerCase(Locale.ROOT);
+    }
+
+    private boolean contiene(long isbn, String consultaNormalizada) {
+        String texto = textos.apply(isbn);
+        return texto != null && normalizar(texto).contains(consultaNormalizada);
+    }
+
+    private static long trigrama(String texto, int i) {
+        return ((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16) | texto.charAt(i + 2);
+    }
+}
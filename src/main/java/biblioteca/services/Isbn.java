@@ -0,0 +1,102 @@
+package biblioteca.services;
+
+/**
+ * Conversión de ISBN a su forma canónica: el ISBN-13 como número {@code long}.
+ * Acepta ISBN-10 e ISBN-13 con guiones o espacios, valida el dígito de control y
+ * convierte los ISBN-10 a ISBN-13 (prefijo 978). Se analiza carácter a carácter,
+ * sin expresiones regulares ni objetos intermedios.
+ */
+final class Isbn {
+
+    /** Valor devuelto cuando el texto no es un ISBN válido */
+    static final long INVALIDO = -1L;
+
+    private Isbn() {}
+
+    /**
+     * Obtiene la clave canónica de un ISBN
+     * @param isbn ISBN-10 o ISBN-13, con o sin guiones y espacios
+     * @return el ISBN-13 como número, o {@link #INVALIDO} si el formato o el dígito de control no son válidos
+     */
+    static long aClave(String isbn) {
+        if (isbn == null) return INVALIDO;
+
+        long digitos = 0;
+        int cantidad = 0;
+        boolean controlX = false;
+
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            // Nada puede seguir al dígito de control 'X'
+            if (controlX) {
+                return INVALIDO;
+            }
+
+            if (c >= '0' && c <= '9') {
+                if (cantidad == 13) {
+                    return INVALIDO;
+                }
+                digitos = digitos * 10 + (c - '0');
+                cantidad++;
+            } else if ((c == 'X' || c == 'x') && cantidad == 9) {
+                // 'X' vale 10 y solo puede ser el control de un ISBN-10
+                controlX = true;
+                cantidad++;
+            } else {
+                return INVALIDO;
+            }
+        }
+
+        if (cantidad == 13) {
+            long prefijo = digitos / 10_000_000_000L;
+            boolean valido = (prefijo == 978 || prefijo == 979) && controlIsbn13(digitos / 10) == digitos % 10;
+            return valido ? digitos : INVALIDO;
+        }
+
+        if (cantidad == 10) {
+            long cuerpo = controlX ? digitos : digitos / 10;
+            long control = controlX ? 10 : digitos % 10;
+            return controlIsbn10(cuerpo) == control ? aIsbn13(cuerpo) : INVALIDO;
+        }
+
+        return INVALIDO;
+    }
+
+    /**
+     * Convierte los 9 dígitos de un ISBN-10 (sin control) a ISBN-13 con prefijo 978
+     */
+    private static long aIsbn13(long cuerpoIsbn10) {
+        long sinControl = 978_000_000_000L + cuerpoIsbn10;
+        return sinControl * 10 + controlIsbn13(sinControl);
+    }
+
+    /**
+     * Dígito de control de un ISBN-10 a partir de sus 9 primeros dígitos (10 equivale a 'X')
+     */
+    private static int controlIsbn10(long cuerpo) {
+        int suma = 0;
+        // De derecha a izquierda los pesos son 2, 3, ..., 10
+        for (int peso = 2; peso <= 10; peso++) {
+            suma += (int) (cuerpo % 10) * peso;
+            cuerpo /= 10;
+        }
+        return (11 - suma % 11) % 11;
+    }
+
+    /**
+     * Dígito de control de un ISBN-13 a partir de sus 12 primeros dígitos
+     */
+    private static int controlIsbn13(long cuerpo) {
+        int suma = 0;
+        // De derecha a izquierda los pesos alternan 3, 1, 3, ...
+        for (int posicion = 0; posicion < 12; posicion++) {
+            int digito = (int) (cuerpo % 10);
+            suma += (posicion % 2 == 0) ? digito * 3 : digito;
+            cuerpo /= 10;
+        }
+        return (10 - suma % 10) % 10;
+    }
+}
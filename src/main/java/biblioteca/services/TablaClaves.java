@@ -0,0 +1,241 @@
+package biblioteca.services;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Conjunto concurrente de claves de 44 bits (ISBN-13 canónico) con un valor de 20 bits
+ * por clave. Cada entrada ocupa un solo {@code long} ({@code valor << 44 | clave}) en una
+ * tabla con direccionamiento abierto (sondeo lineal), sin objetos por entrada ni claves en
+ * caja. Los índices la usan para sus listas de ISBN en lugar de {@code Set<Long>} o
+ * {@code Map<Long, Integer>}.
+ *
+ * Si se crea fuera del heap, las tablas de más de {@value #UMBRAL_DIRECTO} posiciones viven
+ * en un {@code ByteBuffer} directo; las pequeñas (la mayoría) siguen en el heap, donde un
+ * buffer directo costaría más de lo que ahorra.
+ *
+ * Concurrencia: igual que {@link TablaLibros}, las lecturas son optimistas con un
+ * {@link StampedLock} y las escrituras se serializan entre sí.
+ */
+final class TablaClaves {
+
+    static final int BITS_CLAVE = 44;
+    static final long MASCARA_CLAVE = (1L << BITS_CLAVE) - 1;
+    static final int VALOR_MAXIMO = (1 << (64 - BITS_CLAVE)) - 1;
+
+    private static final int CAPACIDAD_INICIAL = 4;
+    private static final int UMBRAL_DIRECTO = 1024;
+
+    private final boolean fueraDelHeap;
+    private final StampedLock lock = new StampedLock();
+    private LongBuffer entradas = LongBuffer.allocate(CAPACIDAD_INICIAL);
+    private volatile int tamanio;
+
+    /**
+     * @param fueraDelHeap si es true, las tablas grandes se guardan en memoria directa
+     */
+    TablaClaves(boolean fueraDelHeap) {
+        this.fueraDelHeap = fueraDelHeap;
+    }
+
+    /**
+     * @param entrada entrada devuelta por {@link #copiar}
+     * @return su clave
+     */
+    static long clave(long entrada) {
+        return entrada & MASCARA_CLAVE;
+    }
+
+    /**
+     * @param entrada entrada devuelta por {@link #copiar}
+     * @return su valor
+     */
+    static int valor(long entrada) {
+        return (int) (entrada >>> BITS_CLAVE);
+    }
+
+    /**
+     * Agrega una clave o cambia su valor
+     * @param clave clave de 44 bits distinta de 0
+     * @param valor valor entre 0 y {@link #VALOR_MAXIMO} (se acota a ese rango)
+     */
+    void poner(long clave, int valor) {
+        long entrada = (long) Math.max(0, Math.min(valor, VALOR_MAXIMO)) << BITS_CLAVE | clave;
+        long stamp = lock.writeLock();
+        try {
+            int mascara = entradas.capacity() - 1;
+            int i = indiceIdeal(clave, mascara);
+            long actual;
+            while ((actual = entradas.get(i)) != 0) {
+                if (clave(actual) == clave) {
+                    entradas.put(i, entrada);
+                    return;
+                }
+                i = (i + 1) & mascara;
+            }
+            entradas.put(i, entrada);
+            tamanio++;
+
+            // Factor de carga máximo 0.75
+            if (tamanio * 4 > entradas.capacity() * 3) {
+                redimensionar();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Quita una clave
+     * @param clave clave a quitar
+     */
+    void quitar(long clave) {
+        long stamp = lock.writeLock();
+        try {
+            int mascara = entradas.capacity() - 1;
+            int i = indiceIdeal(clave, mascara);
+            long actual;
+            while (clave(actual = entradas.get(i)) != clave) {
+                if (actual == 0) return;
+                i = (i + 1) & mascara;
+            }
+
+            // Borrado con desplazamiento hacia atrás, igual que en TablaLibros
+            int hueco = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mascara;
+                long siguiente = entradas.get(j);
+                if (siguiente == 0) break;
+                int ideal = indiceIdeal(clave(siguiente), mascara);
+                boolean mover = hueco <= j ? (ideal <= hueco || ideal > j) : (ideal <= hueco && ideal > j);
+                if (mover) {
+                    entradas.put(hueco, siguiente);
+                    hueco = j;
+                }
+            }
+            entradas.put(hueco, 0);
+            tamanio--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param clave clave a buscar
+     * @return su valor, o -1 si no está
+     */
+    int obtener(long clave) {
+        long stamp = lock.tryOptimisticRead();
+        int valor = buscar(clave);
+        if (lock.validate(stamp)) {
+            return valor;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return buscar(clave);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @param clave clave a buscar
+     * @return true si está
+     */
+    boolean contiene(long clave) {
+        return obtener(clave) >= 0;
+    }
+
+    /**
+     * @return número de claves
+     */
+    int tamanio() {
+        return tamanio;
+    }
+
+    /**
+     * Copia las entradas de forma consistente (una instantánea de la tabla)
+     * @return entradas empaquetadas; se leen con {@link #clave} y {@link #valor}
+     */
+    long[] copiar() {
+        long stamp = lock.tryOptimisticRead();
+        long[] copia = copiarPosiciones();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                copia = copiarPosiciones();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        int cantidad = 0;
+        for (long entrada : copia) {
+            if (entrada != 0) {
+                copia[cantidad++] = entrada;
+            }
+        }
+        return Arrays.copyOf(copia, cantidad);
+    }
+
+    /**
+     * Busca una clave. Puede ejecutarse sin bloqueo: el buffer se lee una sola vez y el
+     * sondeo está acotado, así que un estado a medio escribir nunca provoca errores.
+     */
+    private int buscar(long clave) {
+        LongBuffer e = entradas;
+        int n = e.capacity();
+        int mascara = n - 1;
+        int i = indiceIdeal(clave, mascara);
+        for (int sondeos = 0; sondeos < n; sondeos++) {
+            long actual = e.get(i);
+            if (actual == 0) {
+                return -1;
+            }
+            if (clave(actual) == clave) {
+                return valor(actual);
+            }
+            i = (i + 1) & mascara;
+        }
+        return -1;
+    }
+
+    private long[] copiarPosiciones() {
+        LongBuffer e = entradas.duplicate();
+        e.clear();
+        long[] copia = new long[e.capacity()];
+        e.get(copia);
+        return copia;
+    }
+
+    private void redimensionar() {
+        LongBuffer anteriores = entradas;
+        int capacidad = anteriores.capacity() * 2;
+        LongBuffer nuevas = fueraDelHeap && capacidad > UMBRAL_DIRECTO
+                ? ByteBuffer.allocateDirect(capacidad * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer()
+                : LongBuffer.allocate(capacidad);
+        int mascara = capacidad - 1;
+
+        for (int i = 0; i < anteriores.capacity(); i++) {
+            long entrada = anteriores.get(i);
+            if (entrada != 0) {
+                int j = indiceIdeal(clave(entrada), mascara);
+                while (nuevas.get(j) != 0) {
+                    j = (j + 1) & mascara;
+                }
+                nuevas.put(j, entrada);
+            }
+        }
+        entradas = nuevas;
+    }
+
+    private static int indiceIdeal(long clave, int mascara) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 29)) & mascara;
+    }
+}
@@ -0,0 +1,305 @@
+package biblioteca.services;
+
+import biblioteca.models.Libro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongPredicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Mapa concurrente de clave {@code long} (ISBN-13 canónico) a {@link Libro}.
+ *
+ * Está dividido en segmentos con direccionamiento abierto (sondeo lineal) sobre arreglos
+ * primitivos, sin objetos por entrada ni claves en caja. Cada segmento tiene su
+ * {@link StampedLock}: las lecturas son optimistas y no bloquean ni reservan memoria, y
+ * solo si coinciden con una escritura en el mismo segmento se repiten con el bloqueo de
+ * lectura. Las escrituras de un segmento se serializan entre sí.
+ *
+ * La clave 0 no es un ISBN válido y se usa para marcar las posiciones vacías.
+ */
+class TablaLibros implements AlmacenLibros {
+
+    private static final int SEGMENTOS = 64;
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    private final Segmento[] segmentos = new Segmento[SEGMENTOS];
+
+    TablaLibros() {
+        for (int i = 0; i < SEGMENTOS; i++) {
+            segmentos[i] = new Segmento();
+        }
+    }
+
+    @Override
+    public Libro obtener(long clave) {
+        long hash = mezclar(clave);
+        Segmento segmento = segmentos[(int) (hash >>> 58)];
+        StampedLock lock = segmento.lock;
+
+        long stamp = lock.tryOptimisticRead();
+        Libro libro = segmento.buscar(clave, hash);
+        if (lock.validate(stamp)) {
+            return libro;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return segmento.buscar(clave, hash);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Libro calcular(long clave, UnaryOperator<Libro> funcion) {
+        long hash = mezclar(clave);
+        Segmento segmento = segmentos[(int) (hash >>> 58)];
+        long stamp = segmento.lock.writeLock();
+        try {
+            Libro actual = segmento.buscar(clave, hash);
+            Libro nuevo = funcion.apply(actual);
+            if (nuevo != null) {
+                segmento.poner(clave, hash, nuevo);
+            } else if (actual != null) {
+                segmento.quitar(clave, hash);
+            }
+            return nuevo;
+        } finally {
+            segmento.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copia los libros de la tabla. Cada segmento se copia de forma consistente;
+     * el conjunto es una vista débilmente consistente, como la de ConcurrentHashMap.
+     * @return lista con los libros
+     */
+    @Override
+    public List<Libro> valores() {
+        List<Libro> libros = new ArrayList<>(tamanio());
+        for (Segmento segmento : segmentos) {
+            libros.addAll(segmento.copiar());
+        }
+        return libros;
+    }
+
+    /**
+     * @return número aproximado de libros (suma sin bloqueo de los segmentos)
+     */
+    @Override
+    public int tamanio() {
+        int total = 0;
+        for (Segmento segmento : segmentos) {
+            total += segmento.tamanio;
+        }
+        return total;
+    }
+
+    /**
+     * Recorre las claves guardadas en cada segmento, sin volver a analizar los ISBN.
+     * Cada segmento se copia de forma consistente, como en {@link #valores()}.
+     */
+    @Override
+    public void recorrerClaves(LongPredicate visitante) {
+        for (Segmento segmento : segmentos) {
+            Entradas entradas = segmento.copiarEntradas(false);
+            for (long clave : entradas.claves) {
+                if (clave != 0 && !visitante.test(clave)) return;
+            }
+        }
+    }
+
+    @Override
+    public void recorrer(VisitanteCampos visitante) {
+        for (Segmento segmento : segmentos) {
+            Entradas entradas = segmento.copiarEntradas(true);
+            for (int i = 0; i < entradas.claves.length; i++) {
+                Libro libro = entradas.valores[i];
+                if (entradas.claves[i] != 0 && libro != null) {
+                    visitante.visitar(entradas.claves[i], libro.getTitulo(), libro.getAutor(), libro.getAnio(),
+                            libro.getVersion());
+                }
+            }
+        }
+    }
+
+    @Override
+    public AlmacenLibros crearVacio() {
+        return new TablaLibros();
+    }
+
+    private static long mezclar(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Copia de los arreglos de un segmento; las posiciones vacías tienen clave 0
+     */
+    private static final class Entradas {
+        final long[] claves;
+        final Libro[] valores;
+
+        Entradas(long[] claves, Libro[] valores) {
+            this.claves = claves;
+            this.valores = valores;
+        }
+    }
+
+    private static final class Segmento {
+        private final StampedLock lock = new StampedLock();
+        private long[] claves = new long[CAPACIDAD_INICIAL];
+        private Libro[] valores = new Libro[CAPACIDAD_INICIAL];
+        private volatile int tamanio;
+
+        /**
+         * Busca una clave. Puede ejecutarse sin bloqueo (lectura optimista): los arreglos se
+         * leen una sola vez y el sondeo está acotado, de modo que un estado a medio escribir
+         * nunca provoca errores; el llamador descarta el resultado si el stamp no valida.
+         */
+        Libro buscar(long clave, long hash) {
+            long[] c = claves;
+            Libro[] v = valores;
+            int n = c.length;
+            if (v.length != n) {
+                return null;
+            }
+            int mascara = n - 1;
+            int i = (int) hash & mascara;
+            for (int sondeos = 0; sondeos < n; sondeos++) {
+                long k = c[i];
+                if (k == clave) {
+                    return v[i];
+                }
+                if (k == 0) {
+                    return null;
+                }
+                i = (i + 1) & mascara;
+            }
+            return null;
+        }
+
+        void poner(long clave, long hash, Libro libro) {
+            int mascara = claves.length - 1;
+            int i = (int) hash & mascara;
+            while (claves[i] != 0) {
+                if (claves[i] == clave) {
+                    valores[i] = libro;
+                    return;
+                }
+                i = (i + 1) & mascara;
+            }
+            claves[i] = clave;
+            valores[i] = libro;
+            tamanio++;
+
+            // Factor de carga máximo 0.5 para sondeos cortos
+            if (tamanio * 2 > claves.length) {
+                redimensionar();
+            }
+        }
+
+        void quitar(long clave, long hash) {
+            int mascara = claves.length - 1;
+            int i = (int) hash & mascara;
+            while (claves[i] != clave) {
+                if (claves[i] == 0) return;
+                i = (i + 1) & mascara;
+            }
+
+            // Borrado con desplazamiento hacia atrás: sin lápidas, los sondeos siguen siendo cortos
+            int hueco = i;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mascara;
+                long k = claves[j];
+                if (k == 0) break;
+                int ideal = (int) mezclar(k) & mascara;
+                // Mover k al hueco si su posición ideal no está entre el hueco (exclusive) y j
+                boolean mover = hueco <= j ? (ideal <= hueco || ideal > j) : (ideal <= hueco && ideal > j);
+                if (mover) {
+                    claves[hueco] = k;
+                    valores[hueco] = valores[j];
+                    hueco = j;
+                }
+            }
+            claves[hueco] = 0;
+            valores[hueco] = null;
+            tamanio--;
+        }
+
+        /**
+         * @return copia consistente de los libros del segmento
+         */
+        List<Libro> copiar() {
+            List<Libro> libros = new ArrayList<>(tamanio);
+            long stamp = lock.tryOptimisticRead();
+            copiarEn(libros);
+            if (!lock.validate(stamp)) {
+                libros.clear();
+                stamp = lock.readLock();
+                try {
+                    copiarEn(libros);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            return libros;
+        }
+
+        /**
+         * Copia los arreglos del segmento con una lectura optimista (dos copias de arreglo,
+         * sin recorrer los libros) y solo si coincide con una escritura la repite con el
+         * bloqueo de lectura
+         * @param conValores si es false solo se copian las claves
+         * @return claves y, si se piden, libros en las mismas posiciones
+         */
+        Entradas copiarEntradas(boolean conValores) {
+            long stamp = lock.tryOptimisticRead();
+            long[] c = claves.clone();
+            Libro[] v = conValores ? valores.clone() : null;
+            if (lock.validate(stamp)) {
+                return new Entradas(c, v);
+            }
+            stamp = lock.readLock();
+            try {
+                return new Entradas(claves.clone(), conValores ? valores.clone() : null);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void copiarEn(List<Libro> destino) {
+            Libro[] v = valores;
+            for (Libro libro : v) {
+                if (libro != null) {
+                    destino.add(libro);
+                }
+            }
+        }
+
+        private void redimensionar() {
+            long[] clavesAnteriores = claves;
+            Libro[] valoresAnteriores = valores;
+            long[] nuevasClaves = new long[clavesAnteriores.length * 2];
+            Libro[] nuevosValores = new Libro[clavesAnteriores.length * 2];
+            int mascara = nuevasClaves.length - 1;
+
+            for (int i = 0; i < clavesAnteriores.length; i++) {
+                long k = clavesAnteriores[i];
+                if (k != 0) {
+                    int j = (int) mezclar(k) & mascara;
+                    while (nuevasClaves[j] != 0) {
+                        j = (j + 1) & mascara;
+                    }
+                    nuevasClaves[j] = k;
+                    nuevosValores[j] = valoresAnteriores[i];
+                }
+            }
+            claves = nuevasClaves;
+            valores = nuevosValores;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package observabilidad;
+
+import com.google.gson.Gson;
+import observabilidad.controllers.GrabacionController;
+import observabilidad.models.ErrorResponse;
+import observabilidad.services.GrabacionService;
+import spark.ResponseTransformer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static spark.Spark.*;
+
+/**
+ * Endpoints de administración para grabaciones de Java Flight Recorder.
+ * No tiene punto de entrada propio: lo monta el servidor unificado, solo si se habilita.
+ * No tiene autenticación, así que por defecto solo atiende a clientes locales
+ * (-Dadmin.soloLocal=false lo abre a cualquier cliente).
+ */
+public class ObservabilidadAPI {
+
+    /**
+     * Dependencias de la API. Se crean la primera vez que se usan (idiom del holder).
+     * El directorio de los volcados se configura con -Dservidor.jfr.directorio (por defecto "jfr")
+     * y el número de volcados que se conservan con -Dservidor.jfr.maximoArchivos (por defecto 5).
+     */
+    private static class Dependencias {
+        private static final Gson gson = new Gson();
+        private static final GrabacionService grabacionService =
+                new GrabacionService(System.getProperty("servidor.jfr.directorio", "jfr"),
+                        Integer.getInteger("servidor.jfr.maximoArchivos", 5));
+        private static final GrabacionController grabacionController = new GrabacionController(grabacionService);
+    }
+
+    /**
+     * Registra las rutas de administración bajo un prefijo
+     * @param prefijo prefijo de las rutas (por ejemplo "/admin")
+     */
+    public static void registrarRutas(String prefijo) {
+        ResponseTransformer jsonTransformer = model -> Dependencias.gson.toJson(model);
+        boolean soloLocal = Boolean.parseBoolean(System.getProperty("admin.soloLocal", "true"));
+
+        path(prefijo, () -> {
+            before("/*", (req, res) -> {
+                res.type("application/json");
+                if (soloLocal && !esLocal(req.ip())) {
+                    halt(403, Dependencias.gson.toJson(new ErrorResponse("La API de administración solo atiende a clientes locales")));
+                }
+            });
+
+            get("/jfr", (req, res) -> Dependencias.grabacionController.obtenerEstado(req, res), jsonTransformer);
+            post("/jfr/iniciar", (req, res) -> Dependencias.grabacionController.iniciar(req, res), jsonTransformer);
+            post("/jfr/volcar", (req, res) -> Dependencias.grabacionController.volcar(req, res), jsonTransformer);
+            post("/jfr/detener", (req, res) -> Dependencias.grabacionController.detener(req, res), jsonTransformer);
+        });
+    }
+
+    /**
+     * @param ip dirección IP del cliente (numérica: no se resuelve por DNS)
+     * @return true si es una dirección de loopback
+     */
+    private static boolean esLocal(String ip) {
+        try {
+            return ip != null && InetAddress.getByName(ip).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
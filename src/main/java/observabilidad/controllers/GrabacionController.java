@@ -0,0 +1,111 @@
+package observabilidad.controllers;
+
+import observabilidad.models.ErrorResponse;
+import observabilidad.models.EstadoGrabacion;
+import observabilidad.services.GrabacionService;
+import spark.Request;
+import spark.Response;
+
+import java.io.UncheckedIOException;
+
+public class GrabacionController {
+
+    private GrabacionService grabacionService;
+
+    public GrabacionController(GrabacionService grabacionService) {
+        this.grabacionService = grabacionService;
+    }
+
+    /**
+     * Obtiene el estado de la grabación
+     * @param req request de Spark
+     * @param res response de Spark
+     * @return estado en JSON
+     */
+    public Object obtenerEstado(Request req, Response res) {
+        res.status(200);
+        return grabacionService.estado();
+    }
+
+    /**
+     * Inicia una grabación acotada
+     * @param req request de Spark con query params opcionales ?maximoMb=, &maximoSegundos=
+     *            y &configuracion=default|profile
+     * @param res response de Spark
+     * @return estado en JSON, 409 si ya hay una activa o 400 si los parámetros no son válidos
+     */
+    public Object iniciar(Request req, Response res) {
+        try {
+            long maximoMb = parametroLong(req, "maximoMb", GrabacionService.MAXIMO_MB_POR_DEFECTO);
+            long maximoSegundos = parametroLong(req, "maximoSegundos", GrabacionService.MAXIMO_SEGUNDOS_POR_DEFECTO);
+            String configuracion = req.queryParams("configuracion") != null ? req.queryParams("configuracion") : "default";
+            EstadoGrabacion estado = grabacionService.iniciar(maximoMb, maximoSegundos, configuracion);
+
+            res.status(201);
+            return estado;
+
+        } catch (GrabacionService.EstadoInvalidoException e) {
+            res.status(409);
+            return new ErrorResponse(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            return new ErrorResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Vuelca la grabación activa a un archivo sin detenerla
+     * @param req request de Spark
+     * @param res response de Spark
+     * @return estado en JSON con la ruta del archivo, o 409 si no hay grabación
+     */
+    public Object volcar(Request req, Response res) {
+        try {
+            EstadoGrabacion estado = grabacionService.volcar();
+
+            res.status(200);
+            return estado;
+
+        } catch (GrabacionService.EstadoInvalidoException e) {
+            res.status(409);
+            return new ErrorResponse(e.getMessage());
+        } catch (UncheckedIOException e) {
+            res.status(500);
+            return new ErrorResponse(e.getMessage());
+        }
+    }
+
+    /**
+     * Detiene la grabación activa y la vuelca a un archivo
+     * @param req request de Spark
+     * @param res response de Spark
+     * @return estado en JSON con la ruta del archivo, o 409 si no hay grabación
+     */
+    public Object detener(Request req, Response res) {
+        try {
+            EstadoGrabacion estado = grabacionService.detener();
+
+            res.status(200);
+            return estado;
+
+        } catch (GrabacionService.EstadoInvalidoException e) {
+            res.status(409);
+            return new ErrorResponse(e.getMessage());
+        } catch (UncheckedIOException e) {
+            res.status(500);
+            return new ErrorResponse(e.getMessage());
+        }
+    }
+
+    private long parametroLong(Request req, String nombre, long porDefecto) {
+        String valor = req.queryParams(nombre);
+        if (valor == null || valor.isEmpty()) {
+            return porDefecto;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parámetro '" + nombre + "' inválido: debe ser un número");
+        }
+    }
+}
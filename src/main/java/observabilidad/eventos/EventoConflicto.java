@@ -0,0 +1,64 @@
+package observabilidad.eventos;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Comprobación de conflictos de horario al crear una reserva
+ */
+@Name("servidor.ComprobacionConflicto")
+@Label("Comprobación de conflicto")
+@Category({"Servidor", "Reservas"})
+@Description("Búsqueda de reservas que se solapan con una nueva")
+@StackTrace(false)
+public class EventoConflicto extends Event {
+
+    @Label("Recurso")
+    String recurso;
+
+    @Label("Candidatos")
+    @Description("Reservas examinadas hasta encontrar un conflicto o terminar")
+    int candidatos;
+
+    @Label("Conflicto")
+    boolean conflicto;
+
+    /** Si se empezó a medir; JFR no graba los campos transient */
+    private transient boolean iniciado;
+
+    /**
+     * Crea el evento y empieza a medir. Sin una grabación que lo pida no lee el reloj.
+     */
+    public static EventoConflicto iniciar() {
+        EventoConflicto evento = new EventoConflicto();
+        if (evento.isEnabled()) {
+            evento.iniciado = true;
+            evento.begin();
+        }
+        return evento;
+    }
+
+    /**
+     * Termina la medición y registra el evento si hay una grabación que lo pide
+     * @param recurso recurso de la reserva nueva
+     * @param candidatos reservas examinadas
+     * @param conflicto si se encontró un conflicto
+     */
+    public void terminar(String recurso, int candidatos, boolean conflicto) {
+        // Una grabación iniciada a mitad de la comprobación no recibe un evento sin principio
+        if (!iniciado) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.recurso = recurso;
+            this.candidatos = candidatos;
+            this.conflicto = conflicto;
+            commit();
+        }
+    }
+}
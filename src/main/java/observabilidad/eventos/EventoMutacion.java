@@ -0,0 +1,71 @@
+package observabilidad.eventos;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Operación de escritura de un servicio (alta, modificación, baja, carga masiva, cancelación)
+ */
+@Name("servidor.Mutacion")
+@Label("Mutación de servicio")
+@Category({"Servidor", "Servicios"})
+@Description("Operación de escritura sobre los datos de un servicio")
+@StackTrace(false)
+public class EventoMutacion extends Event {
+
+    @Label("Servicio")
+    String servicio;
+
+    @Label("Operación")
+    String operacion;
+
+    @Label("Clave")
+    @Description("ISBN o ID afectado, si lo hay")
+    String clave;
+
+    @Label("Éxito")
+    boolean exito;
+
+    /** Si se empezó a medir; JFR no graba los campos transient */
+    private transient boolean iniciado;
+
+    /**
+     * Crea el evento y empieza a medir. Sin una grabación que lo pida no lee el reloj ni
+     * rellena campos.
+     * @param servicio servicio que hace la escritura (biblioteca, reservas)
+     * @param operacion nombre de la operación
+     */
+    public static EventoMutacion iniciar(String servicio, String operacion) {
+        EventoMutacion evento = new EventoMutacion();
+        if (!evento.isEnabled()) {
+            return evento;
+        }
+        evento.servicio = servicio;
+        evento.operacion = operacion;
+        evento.iniciado = true;
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Termina la medición y registra el evento si hay una grabación que lo pide
+     * @param clave ISBN o ID afectado, o null
+     * @param exito si la operación se completó
+     */
+    public void terminar(String clave, boolean exito) {
+        // Una grabación iniciada a mitad de la operación no recibe un evento sin principio
+        if (!iniciado) {
+            return;
+        }
+        end();
+        if (shouldCommit()) {
+            this.clave = clave;
+            this.exito = exito;
+            commit();
+        }
+    }
+}
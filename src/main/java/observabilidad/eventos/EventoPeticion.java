@@ -0,0 +1,37 @@
+package observabilidad.eventos;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Atención de una petición HTTP por una ruta: la duración es la del handler (sin la
+ * serialización, que tiene su propio evento) y la espera es el tiempo desde que Jetty
+ * recibió la petición hasta que empezó el handler (cola del pool de hilos y filtros).
+ */
+@Name("servidor.Peticion")
+@Label("Petición HTTP")
+@Category({"Servidor", "HTTP"})
+@Description("Atención de una petición HTTP por una ruta de Spark")
+@StackTrace(false)
+public class EventoPeticion extends Event {
+
+    @Label("Método")
+    String metodo;
+
+    @Label("Ruta")
+    @Description("Patrón de la ruta, por ejemplo /biblioteca/libros/:isbn")
+    String ruta;
+
+    @Label("Estado HTTP")
+    int estado;
+
+    @Label("Espera")
+    @Description("Desde que Jetty recibió la petición hasta el inicio del handler")
+    @Timespan(Timespan.MILLISECONDS)
+    long espera;
+}
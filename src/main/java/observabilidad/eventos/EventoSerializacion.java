@@ -0,0 +1,27 @@
+package observabilidad.eventos;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Serialización a JSON de la respuesta de una ruta
+ */
+@Name("servidor.SerializacionJson")
+@Label("Serialización JSON")
+@Category({"Servidor", "HTTP"})
+@Description("Conversión a JSON del objeto devuelto por una ruta")
+@StackTrace(false)
+public class EventoSerializacion extends Event {
+
+    @Label("Tipo")
+    @Description("Clase del objeto serializado")
+    String tipo;
+
+    @Label("Tamaño")
+    @Description("Longitud del JSON en caracteres")
+    int caracteres;
+}
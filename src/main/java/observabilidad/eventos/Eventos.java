@@ -0,0 +1,88 @@
+package observabilidad.eventos;
+
+import com.google.gson.Gson;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Utilidades para emitir los eventos de JFR desde las APIs.
+ *
+ * Cuando no hay ninguna grabación activa, {@code isEnabled()} devuelve false y el coste es
+ * el de crear un objeto que el JIT suele eliminar: no se leen relojes ni se asignan campos.
+ */
+public final class Eventos {
+
+    private Eventos() {
+    }
+
+    /**
+     * Envuelve el handler de una ruta para emitir un {@link EventoPeticion}
+     * @param ruta handler original
+     * @return handler que mide la petición
+     */
+    public static Route medir(Route ruta) {
+        return (req, res) -> {
+            EventoPeticion evento = new EventoPeticion();
+            if (!evento.isEnabled()) {
+                return ruta.handle(req, res);
+            }
+
+            long inicio = System.currentTimeMillis();
+            int estadoHalt = 0;
+            evento.begin();
+            try {
+                return ruta.handle(req, res);
+            } catch (HaltException e) {
+                // halt() sale antes de que Spark fije el estado en la respuesta (p. ej. el 304 de un GET condicional)
+                estadoHalt = e.statusCode();
+                throw e;
+            } finally {
+                evento.end();
+                if (evento.shouldCommit()) {
+                    completar(evento, req, res, inicio, estadoHalt);
+                    evento.commit();
+                }
+            }
+        };
+    }
+
+    /**
+     * Convierte un objeto a JSON y emite un {@link EventoSerializacion}
+     * @param gson instancia de Gson de la API
+     * @param modelo objeto devuelto por la ruta
+     * @return el JSON
+     */
+    public static String aJson(Gson gson, Object modelo) {
+        EventoSerializacion evento = new EventoSerializacion();
+        if (!evento.isEnabled()) {
+            return gson.toJson(modelo);
+        }
+
+        evento.begin();
+        String json = gson.toJson(modelo);
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.tipo = modelo == null ? "null" : modelo.getClass().getName();
+            evento.caracteres = json.length();
+            evento.commit();
+        }
+        return json;
+    }
+
+    /**
+     * @param estadoHalt estado de un {@code halt()}, o 0 si la ruta terminó normalmente
+     */
+    private static void completar(EventoPeticion evento, Request req, Response res, long inicio, int estadoHalt) {
+        evento.metodo = req.requestMethod();
+        evento.ruta = req.matchedPath();
+        evento.estado = estadoHalt != 0 ? estadoHalt : res.raw().getStatus();
+
+        // Jetty anota cuándo recibió la petición (Spark la envuelve, hay que llegar a la original)
+        org.eclipse.jetty.server.Request base = org.eclipse.jetty.server.Request.getBaseRequest(req.raw());
+        if (base != null && base.getTimeStamp() > 0) {
+            evento.espera = Math.max(inicio - base.getTimeStamp(), 0);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package observabilidad.models;
+
+public class EstadoGrabacion {
+    private boolean activa;
+    private String inicio;
+    private long maximoMb;
+    private long maximoSegundos;
+    private String archivo;
+
+    public EstadoGrabacion(boolean activa, String inicio, long maximoMb, long maximoSegundos, String archivo) {
+        this.activa = activa;
+        this.inicio = inicio;
+        this.maximoMb = maximoMb;
+        this.maximoSegundos = maximoSegundos;
+        this.archivo = archivo;
+    }
+
+    public boolean isActiva() { return activa; }
+    public void setActiva(boolean activa) { this.activa = activa; }
+
+    public String getInicio() { return inicio; }
+    public void setInicio(String inicio) { this.inicio = inicio; }
+
+    public long getMaximoMb() { return maximoMb; }
+    public void setMaximoMb(long maximoMb) { this.maximoMb = maximoMb; }
+
+    public long getMaximoSegundos() { return maximoSegundos; }
+    public void setMaximoSegundos(long maximoSegundos) { this.maximoSegundos = maximoSegundos; }
+
+    public String getArchivo() { return archivo; }
+    public void setArchivo(String archivo) { this.archivo = archivo; }
+}
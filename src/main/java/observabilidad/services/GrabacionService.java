@@ -0,0 +1,189 @@
+package observabilidad.services;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import observabilidad.models.EstadoGrabacion;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Gestiona una única grabación de Java Flight Recorder a demanda.
+ *
+ * La grabación está acotada en tamaño y en antigüedad: JFR descarta los datos más viejos
+ * al superar cualquiera de los dos límites, así que puede quedarse activa sin crecer.
+ * Los volcados se escriben siempre en el directorio configurado, con un nombre generado;
+ * quien llama no elige la ruta. Solo se conservan los últimos volcados: al escribir uno se
+ * borran los más antiguos que pasen del máximo configurado.
+ */
+public class GrabacionService {
+
+    public static final long MAXIMO_MB_POR_DEFECTO = 64;
+    public static final long MAXIMO_SEGUNDOS_POR_DEFECTO = 600;
+    private static final long LIMITE_MB = 1024;
+    private static final long LIMITE_SEGUNDOS = 24 * 60 * 60;
+
+    private static final DateTimeFormatter FORMATO_ARCHIVO = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path directorio;
+    private final int maximoArchivos;
+    private Recording grabacion;
+    private LocalDateTime inicio;
+    private long maximoMb;
+    private long maximoSegundos;
+    private String ultimoArchivo;
+
+    /**
+     * @param directorio directorio donde se escriben los volcados (se crea si no existe)
+     * @param maximoArchivos número de volcados que se conservan en el directorio
+     * @throws IllegalArgumentException si el máximo es menor que 1
+     */
+    public GrabacionService(String directorio, int maximoArchivos) {
+        if (maximoArchivos < 1) {
+            throw new IllegalArgumentException("El máximo de volcados debe ser al menos 1");
+        }
+        this.directorio = Paths.get(directorio);
+        this.maximoArchivos = maximoArchivos;
+    }
+
+    /**
+     * Inicia una grabación
+     * @param maximoMb tamaño máximo de la grabación en MB
+     * @param maximoSegundos antigüedad máxima de los datos que se conservan
+     * @param configuracion configuración de JFR: "default" (bajo coste) o "profile"
+     * @return estado de la grabación
+     * @throws EstadoInvalidoException si ya hay una grabación activa
+     * @throws IllegalArgumentException si los límites o la configuración no son válidos
+     */
+    public synchronized EstadoGrabacion iniciar(long maximoMb, long maximoSegundos, String configuracion) {
+        if (grabacion != null) {
+            throw new EstadoInvalidoException("Ya hay una grabación activa");
+        }
+        if (maximoMb < 1 || maximoMb > LIMITE_MB) {
+            throw new IllegalArgumentException("'maximoMb' debe estar entre 1 y " + LIMITE_MB);
+        }
+        if (maximoSegundos < 1 || maximoSegundos > LIMITE_SEGUNDOS) {
+            throw new IllegalArgumentException("'maximoSegundos' debe estar entre 1 y " + LIMITE_SEGUNDOS);
+        }
+        if (!"default".equals(configuracion) && !"profile".equals(configuracion)) {
+            throw new IllegalArgumentException("'configuracion' debe ser 'default' o 'profile'");
+        }
+
+        Recording nueva;
+        try {
+            nueva = new Recording(Configuration.getConfiguration(configuracion));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("No se pudo leer la configuración de JFR " + configuracion, e);
+        }
+        nueva.setName("servidor");
+        nueva.setToDisk(true);
+        nueva.setMaxSize(maximoMb * 1024 * 1024);
+        nueva.setMaxAge(Duration.ofSeconds(maximoSegundos));
+        nueva.start();
+
+        this.grabacion = nueva;
+        this.inicio = LocalDateTime.now();
+        this.maximoMb = maximoMb;
+        this.maximoSegundos = maximoSegundos;
+        System.out.println("Grabación JFR iniciada (" + configuracion + ", " + maximoMb + " MB, " + maximoSegundos + " s)");
+        return estado();
+    }
+
+    /**
+     * Vuelca el contenido actual de la grabación a un archivo, sin detenerla
+     * @return estado de la grabación, con la ruta del archivo escrito
+     * @throws EstadoInvalidoException si no hay una grabación activa
+     */
+    public synchronized EstadoGrabacion volcar() {
+        if (grabacion == null) {
+            throw new EstadoInvalidoException("No hay ninguna grabación activa");
+        }
+        ultimoArchivo = escribir(grabacion).toString();
+        return estado();
+    }
+
+    /**
+     * Detiene la grabación y vuelca su contenido a un archivo
+     * @return estado final, con la ruta del archivo escrito
+     * @throws EstadoInvalidoException si no hay una grabación activa
+     */
+    public synchronized EstadoGrabacion detener() {
+        if (grabacion == null) {
+            throw new EstadoInvalidoException("No hay ninguna grabación activa");
+        }
+        try {
+            if (grabacion.getState() == RecordingState.RUNNING) {
+                grabacion.stop();
+            }
+            ultimoArchivo = escribir(grabacion).toString();
+        } finally {
+            grabacion.close();
+            grabacion = null;
+            inicio = null;
+        }
+        System.out.println("Grabación JFR detenida: " + ultimoArchivo);
+        return estado();
+    }
+
+    /**
+     * @return estado de la grabación y el último archivo escrito
+     */
+    public synchronized EstadoGrabacion estado() {
+        boolean activa = grabacion != null;
+        return new EstadoGrabacion(activa, activa ? inicio.toString() : null,
+                activa ? maximoMb : 0, activa ? maximoSegundos : 0, ultimoArchivo);
+    }
+
+    private Path escribir(Recording recording) {
+        try {
+            Files.createDirectories(directorio);
+            Path archivo = directorio.resolve("grabacion-" + LocalDateTime.now().format(FORMATO_ARCHIVO) + ".jfr");
+            recording.dump(archivo);
+            rotar();
+            return archivo.toAbsolutePath();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir la grabación en " + directorio, e);
+        }
+    }
+
+    /**
+     * Borra los volcados más antiguos hasta dejar {@code maximoArchivos}. El nombre empieza
+     * por la fecha y la hora, así que el orden alfabético es el cronológico.
+     */
+    private void rotar() throws IOException {
+        List<Path> volcados;
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            volcados = archivos
+                    .filter(a -> a.getFileName().toString().matches("grabacion-\\d{8}-\\d{6}-\\d{3}\\.jfr"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (int i = 0; i < volcados.size() - maximoArchivos; i++) {
+            Files.deleteIfExists(volcados.get(i));
+            System.out.println("Volcado JFR antiguo borrado: " + volcados.get(i));
+        }
+    }
+
+    /**
+     * Excepción para operaciones que no corresponden al estado de la grabación
+     * (iniciar con una activa, volcar o detener sin ninguna)
+     */
+    public static class EstadoInvalidoException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public EstadoInvalidoException(String mensaje) {
+            super(mensaje);
+        }
+    }
+}
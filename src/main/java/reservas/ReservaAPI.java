@@ -7,6 +7,7 @@ import reservas.controllers.LocalTimeAdapter;
 import reservas.controllers.ReservaController;
 import reservas.models.ErrorResponse;
 import reservas.services.ReservaService;
+import observabilidad.eventos.Eventos;
 import spark.ResponseTransformer;
 
 import java.time.LocalDate;
@@ -16,12 +17,18 @@ import static spark.Spark.*;
 
 public class ReservaAPI {
 
-    private static ReservaService reservaService = new ReservaService();
-    private static Gson gson = new GsonBuilder()
-            .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
-            .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
-            .create();
-    private static ReservaController reservaController = new ReservaController(reservaService);
+    /**
+     * Dependencias de la API. Se crean la primera vez que se usan (idiom del holder),
+     * así registrar las rutas no paga la inicialización de Gson ni del servicio.
+     */
+    private static class Dependencias {
+        private static final ReservaService reservaService = new ReservaService();
+        private static final Gson gson = new GsonBuilder()
+                .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+                .registerTypeAdapter(LocalTime.class, new LocalTimeAdapter())
+                .create();
+        private static final ReservaController reservaController = new ReservaController(reservaService);
+    }
 
     public static void main(String[] args) {
         port(4567);
@@ -34,34 +41,48 @@ public class ReservaAPI {
         System.out.println("  GET    /reservas/:id       - Obtener una reserva");
         System.out.println("  POST   /reservas           - Crear nueva reserva");
         System.out.println("  DELETE /reservas/:id       - Cancelar reserva");
+        System.out.println("  GET    /recursos/:recurso/ocupacion?desde=&hasta= - Ocupación por día");
     }
 
     /**
      * Registra todas las rutas de la API
      */
     public static void configurarRutas() {
-        // Configurar ResponseTransformer para todas las respuestas JSON
-        ResponseTransformer jsonTransformer = gson::toJson;
-
-        // Configurar headers por defecto
-        before((req, res) -> res.type("application/json"));
-
-        // Rutas principales con ResponseTransformer usando el controlador
-        get("/reservas", reservaController::obtenerReservas, jsonTransformer);
-        get("/reservas/:id", reservaController::obtenerReservaPorId, jsonTransformer);
-        post("/reservas", reservaController::crearReserva, jsonTransformer);
-        delete("/reservas/:id", reservaController::cancelarReserva, jsonTransformer);
+        registrarRutas("");
 
         // Manejo de rutas no encontradas
         notFound((req, res) -> {
             res.type("application/json");
-            return gson.toJson(new ErrorResponse("Ruta no encontrada"));
+            return Dependencias.gson.toJson(new ErrorResponse("Ruta no encontrada"));
         });
 
         // Manejo de errores internos
         internalServerError((req, res) -> {
             res.type("application/json");
-            return gson.toJson(new ErrorResponse("Error interno del servidor"));
+            return Dependencias.gson.toJson(new ErrorResponse("Error interno del servidor"));
+        });
+    }
+
+    /**
+     * Registra las rutas de la API bajo un prefijo, sin tocar los manejadores globales
+     * de errores. Lo usa el servidor unificado para montar varias APIs en una sola instancia.
+     * @param prefijo prefijo de las rutas (por ejemplo "/reservas"), o "" para la raíz
+     */
+    public static void registrarRutas(String prefijo) {
+        // Configurar ResponseTransformer para todas las respuestas JSON
+        ResponseTransformer jsonTransformer = model -> Eventos.aJson(Dependencias.gson, model);
+
+        path(prefijo, () -> {
+            // Configurar headers por defecto
+            before("/*", (req, res) -> res.type("application/json"));
+
+            // Rutas principales con ResponseTransformer usando el controlador; cada handler
+            // emite un evento de JFR por petición cuando hay una grabación activa
+            get("/reservas", Eventos.medir((req, res) -> Dependencias.reservaController.obtenerReservas(req, res)), jsonTransformer);
+            get("/reservas/:id", Eventos.medir((req, res) -> Dependencias.reservaController.obtenerReservaPorId(req, res)), jsonTransformer);
+            post("/reservas", Eventos.medir((req, res) -> Dependencias.reservaController.crearReserva(req, res)), jsonTransformer);
+            delete("/reservas/:id", Eventos.medir((req, res) -> Dependencias.reservaController.cancelarReserva(req, res)), jsonTransformer);
+            get("/recursos/:recurso/ocupacion", Eventos.medir((req, res) -> Dependencias.reservaController.obtenerOcupacion(req, res)), jsonTransformer);
         });
     }
 }
@@ -4,6 +4,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import reservas.models.ConflictResponse;
 import reservas.models.ErrorResponse;
+import reservas.models.OcupacionRecurso;
 import reservas.models.Reserva;
 import reservas.models.SuccessResponse;
 import reservas.services.ReservaService;
@@ -76,6 +77,37 @@ public class ReservaController {
         }
     }
     
+    /**
+     * Obtiene la ocupación de un recurso por día
+     * @param req request de Spark con parámetro :recurso y query params ?desde= y &hasta= (yyyy-MM-dd)
+     * @param res response de Spark
+     * @return minutos reservados y número de reservas por día en JSON, o error 400
+     */
+    public Object obtenerOcupacion(Request req, Response res) {
+        String recurso = req.params(":recurso");
+        String desde = req.queryParams("desde");
+        String hasta = req.queryParams("hasta");
+        
+        if (desde == null || desde.isEmpty() || hasta == null || hasta.isEmpty()) {
+            res.status(400);
+            return new ErrorResponse("Los parámetros 'desde' y 'hasta' son requeridos");
+        }
+        
+        try {
+            OcupacionRecurso ocupacion = reservaService.obtenerOcupacion(recurso, LocalDate.parse(desde), LocalDate.parse(hasta));
+            
+            res.status(200);
+            return ocupacion;
+            
+        } catch (DateTimeParseException e) {
+            res.status(400);
+            return new ErrorResponse("Formato de fecha inválido. Use 'yyyy-MM-dd'");
+        } catch (IllegalArgumentException e) {
+            res.status(400);
+            return new ErrorResponse(e.getMessage());
+        }
+    }
+    
     /**
      * Crea una nueva reserva
      * @param req request de Spark con body JSON
@@ -0,0 +1,24 @@
+package reservas.models;
+
+import java.time.LocalDate;
+
+public class OcupacionDia {
+    private LocalDate fecha;
+    private long minutosReservados;
+    private int reservas;
+
+    public OcupacionDia(LocalDate fecha, long minutosReservados, int reservas) {
+        this.fecha = fecha;
+        this.minutosReservados = minutosReservados;
+        this.reservas = reservas;
+    }
+
+    public LocalDate getFecha() { return fecha; }
+    public void setFecha(LocalDate fecha) { this.fecha = fecha; }
+
+    public long getMinutosReservados() { return minutosReservados; }
+    public void setMinutosReservados(long minutosReservados) { this.minutosReservados = minutosReservados; }
+
+    public int getReservas() { return reservas; }
+    public void setReservas(int reservas) { this.reservas = reservas; }
+}
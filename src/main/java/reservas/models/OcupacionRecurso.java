@@ -0,0 +1,42 @@
+package reservas.models;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class OcupacionRecurso {
+    private String recurso;
+    private LocalDate desde;
+    private LocalDate hasta;
+    private long minutosReservados;
+    private int reservas;
+    private List<OcupacionDia> dias;
+
+    public OcupacionRecurso(String recurso, LocalDate desde, LocalDate hasta, List<OcupacionDia> dias) {
+        this.recurso = recurso;
+        this.desde = desde;
+        this.hasta = hasta;
+        this.dias = dias;
+        for (OcupacionDia dia : dias) {
+            this.minutosReservados += dia.getMinutosReservados();
+            this.reservas += dia.getReservas();
+        }
+    }
+
+    public String getRecurso() { return recurso; }
+    public void setRecurso(String recurso) { this.recurso = recurso; }
+
+    public LocalDate getDesde() { return desde; }
+    public void setDesde(LocalDate desde) { this.desde = desde; }
+
+    public LocalDate getHasta() { return hasta; }
+    public void setHasta(LocalDate hasta) { this.hasta = hasta; }
+
+    public long getMinutosReservados() { return minutosReservados; }
+    public void setMinutosReservados(long minutosReservados) { this.minutosReservados = minutosReservados; }
+
+    public int getReservas() { return reservas; }
+    public void setReservas(int reservas) { this.reservas = reservas; }
+
+    public List<OcupacionDia> getDias() { return dias; }
+    public void setDias(List<OcupacionDia> dias) { this.dias = dias; }
+}
@@ -2,6 +2,7 @@ package reservas.models;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.Locale;
 
 public class Reserva {
     private Long id;
@@ -49,14 +50,25 @@ public class Reserva {
     public EstadoReserva getEstado() { return estado; }
     public void setEstado(EstadoReserva estado) { this.estado = estado; }
 
+    /**
+     * Nombre con el que se identifica un recurso: sin espacios alrededor y en minúsculas,
+     * así que "Sala A" y " sala a" son el mismo recurso. Lo usan la detección de conflictos,
+     * el reparto en particiones y los contadores de ocupación.
+     * @param recurso nombre del recurso tal como llega
+     * @return nombre canónico
+     */
+    public static String recursoCanonico(String recurso) {
+        return recurso.trim().toLowerCase(Locale.ROOT);
+    }
+
     /**
      * Verifica si esta reserva se solapa con otra reserva
      * @param otra la otra reserva a comparar
      * @return true si hay solapamiento de horarios
      */
     public boolean seSolapaCon(Reserva otra) {
-        // Solo pueden solaparse si son del mismo recurso y fecha
-        if (!this.recurso.equals(otra.recurso) || !this.fecha.equals(otra.fecha)) {
+        // Solo pueden solaparse si son del mismo recurso (por su nombre canónico) y fecha
+        if (!recursoCanonico(this.recurso).equals(recursoCanonico(otra.recurso)) || !this.fecha.equals(otra.fecha)) {
             return false;
         }
 
@@ -0,0 +1,172 @@
+package reservas.services;
+
+import reservas.models.OcupacionDia;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ocupación por recurso y día, mantenida de forma incremental al crear y cancelar reservas.
+ *
+ * Cada recurso tiene una tabla de direccionamiento abierto sobre un {@code long[]} con
+ * pares (epoch day, valor), sin un objeto por día. El valor empaqueta el número de
+ * reservas en los 32 bits altos y los minutos reservados en los 32 bits bajos, así que
+ * cada alta o baja actualiza los dos de una vez y una lectura nunca ve uno actualizado sin
+ * el otro.
+ *
+ * Las escrituras de un recurso ya están serializadas por el bloqueo de su partición; la
+ * tabla usa además un {@link StampedLock} para que las consultas lean sin bloquear
+ * (lectura optimista, validada al terminar) y vean todo el rango en un mismo estado.
+ *
+ * Consultar un rango cuesta O(días del rango): una búsqueda por día, sin recorrer reservas.
+ */
+class ContadoresOcupacion {
+
+    private static final long UNA_RESERVA = 1L << 32;
+    private static final long MASCARA_MINUTOS = 0xFFFFFFFFL;
+
+    private final Map<String, Dias> porRecurso = new ConcurrentHashMap<>();
+
+    /**
+     * Suma una reserva confirmada
+     * @param recurso nombre canónico del recurso
+     * @param fecha día de la reserva
+     * @param minutos duración de la reserva
+     */
+    void sumar(String recurso, LocalDate fecha, long minutos) {
+        porRecurso.computeIfAbsent(recurso, r -> new Dias()).sumar(fecha.toEpochDay(), UNA_RESERVA + minutos);
+    }
+
+    /**
+     * Resta una reserva que deja de estar confirmada
+     * @param recurso nombre canónico del recurso
+     * @param fecha día de la reserva
+     * @param minutos duración de la reserva
+     */
+    void restar(String recurso, LocalDate fecha, long minutos) {
+        Dias dias = porRecurso.get(recurso);
+        if (dias != null) {
+            dias.sumar(fecha.toEpochDay(), -(UNA_RESERVA + minutos));
+        }
+    }
+
+    /**
+     * Ocupación de un recurso día a día
+     * @param recurso nombre canónico del recurso
+     * @param desde primer día (incluido)
+     * @param hasta último día (incluido)
+     * @return un elemento por día del rango, también los días sin reservas
+     */
+    List<OcupacionDia> consultar(String recurso, LocalDate desde, LocalDate hasta) {
+        long primero = desde.toEpochDay();
+        long[] valores = new long[(int) (hasta.toEpochDay() - primero + 1)];
+        Dias dias = porRecurso.get(recurso);
+        if (dias != null) {
+            dias.leer(primero, valores);
+        }
+
+        List<OcupacionDia> resultado = new ArrayList<>(valores.length);
+        for (int i = 0; i < valores.length; i++) {
+            resultado.add(new OcupacionDia(LocalDate.ofEpochDay(primero + i), valores[i] & MASCARA_MINUTOS, (int) (valores[i] >>> 32)));
+        }
+        return resultado;
+    }
+
+    /**
+     * Tabla epoch day -> valor empaquetado de un recurso. Los días no se quitan nunca (un
+     * día sin reservas queda a 0), así que la tabla siempre tiene huecos libres y una
+     * búsqueda termina aunque lea la tabla mientras cambia.
+     */
+    private static final class Dias {
+
+        /** Marca de hueco libre: ningún LocalDate tiene ese epoch day */
+        private static final long LIBRE = Long.MIN_VALUE;
+
+        private final StampedLock lock = new StampedLock();
+        /** Pares (día, valor) en posiciones consecutivas */
+        private long[] entradas = nuevaTabla(16);
+        private int usados;
+
+        void sumar(long dia, long incremento) {
+            long sello = lock.writeLock();
+            try {
+                int i = posicion(entradas, dia);
+                if (entradas[i] == LIBRE) {
+                    // Carga máxima del 75%
+                    if ((usados + 1) * 4 > entradas.length / 2 * 3) {
+                        crecer();
+                        i = posicion(entradas, dia);
+                    }
+                    entradas[i] = dia;
+                    usados++;
+                }
+                entradas[i + 1] += incremento;
+            } finally {
+                lock.unlockWrite(sello);
+            }
+        }
+
+        /**
+         * @param primero epoch day del primer día
+         * @param destino recibe el valor de cada día a partir de {@code primero}
+         */
+        void leer(long primero, long[] destino) {
+            long sello = lock.tryOptimisticRead();
+            copiar(primero, destino);
+            if (!lock.validate(sello)) {
+                sello = lock.readLock();
+                try {
+                    copiar(primero, destino);
+                } finally {
+                    lock.unlockRead(sello);
+                }
+            }
+        }
+
+        private void copiar(long primero, long[] destino) {
+            long[] tabla = entradas;
+            for (int d = 0; d < destino.length; d++) {
+                int i = posicion(tabla, primero + d);
+                destino[d] = tabla[i] == LIBRE ? 0 : tabla[i + 1];
+            }
+        }
+
+        private void crecer() {
+            long[] anterior = entradas;
+            long[] nueva = nuevaTabla(anterior.length);
+            for (int i = 0; i < anterior.length; i += 2) {
+                if (anterior[i] != LIBRE) {
+                    int j = posicion(nueva, anterior[i]);
+                    nueva[j] = anterior[i];
+                    nueva[j + 1] = anterior[i + 1];
+                }
+            }
+            entradas = nueva;
+        }
+
+        /**
+         * @return posición del par con ese día, o del hueco libre donde iría
+         */
+        private static int posicion(long[] tabla, long dia) {
+            int mascara = tabla.length / 2 - 1;
+            long h = dia * 0x9E3779B97F4A7C15L;
+            int i = (int) (h ^ (h >>> 32)) & mascara;
+            while (tabla[2 * i] != LIBRE && tabla[2 * i] != dia) {
+                i = (i + 1) & mascara;
+            }
+            return 2 * i;
+        }
+
+        private static long[] nuevaTabla(int huecos) {
+            long[] tabla = new long[2 * huecos];
+            for (int i = 0; i < tabla.length; i += 2) {
+                tabla[i] = LIBRE;
+            }
+            return tabla;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package reservas.services;
+
+import observabilidad.eventos.EventoConflicto;
+import reservas.models.EstadoReserva;
+import reservas.models.OcupacionDia;
+import reservas.models.Reserva;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Una partición del almacén de reservas. Cada recurso (por su nombre canónico) pertenece a
+ * una sola partición, así que todo lo necesario para crear o cancelar una reserva está aquí
+ * y las particiones no comparten ningún estado: ni mapas, ni índices, ni contadores, ni
+ * generador de IDs.
+ *
+ * IDs: la partición {@code p} de {@code n} reparte {@code p + 1}, {@code p + 1 + n},
+ * {@code p + 1 + 2n}... de modo que {@code (id - 1) % n} identifica la partición de un ID
+ * sin consultar nada. Con una sola partición los IDs son 1, 2, 3...
+ *
+ * Concurrencia: crear y cancelar toman el bloqueo de escritura de la partición, así que la
+ * detección de conflictos y el alta son atómicas. Los listados toman el de lectura. La
+ * búsqueda por ID no bloquea.
+ */
+class ParticionReservas {
+
+    private final int indice;
+    private final int particiones;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Todas las reservas de la partición, incluidas las canceladas */
+    private final Map<Long, Reserva> porId = new ConcurrentHashMap<>();
+    /** Reservas en orden de ID creciente (el orden de alta) */
+    private final List<Reserva> enOrden = new ArrayList<>();
+    /** Reservas de cada recurso canónico, en orden de ID */
+    private final Map<String, List<Reserva>> porRecurso = new HashMap<>();
+    /** Reservas confirmadas por recurso canónico y día: los candidatos a conflicto */
+    private final Map<String, Map<LocalDate, List<Reserva>>> confirmadasPorDia = new HashMap<>();
+    private final ContadoresOcupacion ocupacion = new ContadoresOcupacion();
+
+    private long secuencia;
+
+    /**
+     * @param indice número de esta partición (de 0 a particiones - 1)
+     * @param particiones número total de particiones
+     */
+    ParticionReservas(int indice, int particiones) {
+        this.indice = indice;
+        this.particiones = particiones;
+    }
+
+    /**
+     * @param recurso nombre del recurso tal como llega
+     * @param particiones número de particiones
+     * @return la partición que guarda ese recurso
+     */
+    static int particionDeRecurso(String recurso, int particiones) {
+        int h = Reserva.recursoCanonico(recurso).hashCode();
+        return Math.floorMod(h ^ (h >>> 16), particiones);
+    }
+
+    /**
+     * @param id ID de una reserva (al menos 1)
+     * @param particiones número de particiones
+     * @return la partición que asignó ese ID
+     */
+    static int particionDeId(long id, int particiones) {
+        return (int) ((id - 1) % particiones);
+    }
+
+    /**
+     * @param id ID de la reserva
+     * @return la reserva (confirmada o cancelada), o null si no existe
+     */
+    Reserva obtener(long id) {
+        return porId.get(id);
+    }
+
+    /**
+     * @return las reservas confirmadas en orden de ID
+     */
+    List<Reserva> confirmadas() {
+        lock.readLock().lock();
+        try {
+            return filtrarConfirmadas(enOrden);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param recurso nombre del recurso (sin distinguir mayúsculas)
+     * @return las reservas confirmadas del recurso en orden de ID
+     */
+    List<Reserva> confirmadasDeRecurso(String recurso) {
+        lock.readLock().lock();
+        try {
+            List<Reserva> delRecurso = porRecurso.get(Reserva.recursoCanonico(recurso));
+            return delRecurso == null ? Collections.emptyList() : filtrarConfirmadas(delRecurso);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ocupación de un recurso de esta partición día a día
+     * @param recurso nombre del recurso (sin distinguir mayúsculas)
+     * @param desde primer día (incluido)
+     * @param hasta último día (incluido)
+     * @return un elemento por día del rango
+     */
+    List<OcupacionDia> ocupacion(String recurso, LocalDate desde, LocalDate hasta) {
+        return ocupacion.consultar(Reserva.recursoCanonico(recurso), desde, hasta);
+    }
+
+    /**
+     * Guarda una reserva ya validada si no se solapa con otra confirmada. La comprobación
+     * y el alta se hacen bajo el bloqueo de la partición.
+     * @param reserva la reserva a crear
+     * @return la reserva conflictiva, o null si se guardó (con ID y estado asignados)
+     */
+    Reserva crear(Reserva reserva) {
+        String recurso = Reserva.recursoCanonico(reserva.getRecurso());
+        lock.writeLock().lock();
+        try {
+            List<Reserva> delDia = confirmadasPorDia
+                    .computeIfAbsent(recurso, r -> new HashMap<>())
+                    .computeIfAbsent(reserva.getFecha(), f -> new ArrayList<>());
+            Reserva conflicto = detectarConflicto(reserva, delDia);
+            if (conflicto != null) {
+                return conflicto;
+            }
+
+            reserva.setId(secuencia++ * particiones + indice + 1);
+            reserva.setEstado(EstadoReserva.CONFIRMADA);
+
+            porId.put(reserva.getId(), reserva);
+            enOrden.add(reserva);
+            porRecurso.computeIfAbsent(recurso, r -> new ArrayList<>()).add(reserva);
+            delDia.add(reserva);
+            ocupacion.sumar(recurso, reserva.getFecha(), ReservaService.minutos(reserva));
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cancela una reserva confirmada
+     * @param id ID de la reserva
+     * @return la reserva cancelada, o null si no existe o ya estaba cancelada
+     */
+    Reserva cancelar(long id) {
+        lock.writeLock().lock();
+        try {
+            Reserva reserva = porId.get(id);
+            if (reserva == null || reserva.getEstado() == EstadoReserva.CANCELADA) {
+                return null;
+            }
+            reserva.setEstado(EstadoReserva.CANCELADA);
+
+            String recurso = Reserva.recursoCanonico(reserva.getRecurso());
+            Map<LocalDate, List<Reserva>> dias = confirmadasPorDia.get(recurso);
+            List<Reserva> delDia = dias.get(reserva.getFecha());
+            delDia.remove(reserva);
+            if (delDia.isEmpty()) {
+                dias.remove(reserva.getFecha());
+            }
+            ocupacion.restar(recurso, reserva.getFecha(), ReservaService.minutos(reserva));
+            return reserva;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca una reserva que se solape con la nueva entre las confirmadas del mismo recurso
+     * y día. Emite un evento de JFR con el número de reservas examinadas.
+     */
+    private static Reserva detectarConflicto(Reserva nuevaReserva, List<Reserva> delDia) {
+        EventoConflicto evento = EventoConflicto.iniciar();
+        int candidatos = 0;
+        Reserva conflicto = null;
+        for (Reserva r : delDia) {
+            candidatos++;
+            if (nuevaReserva.seSolapaCon(r)) {
+                conflicto = r;
+                break;
+            }
+        }
+        evento.terminar(nuevaReserva.getRecurso(), candidatos, conflicto != null);
+        return conflicto;
+    }
+
+    private static List<Reserva> filtrarConfirmadas(List<Reserva> reservas) {
+        List<Reserva> resultado = new ArrayList<>();
+        for (Reserva r : reservas) {
+            if (r.getEstado() == EstadoReserva.CONFIRMADA) {
+                resultado.add(r);
+            }
+        }
+        return resultado;
+    }
+}
@@ -1,44 +1,76 @@
 package reservas.services;
 
+import observabilidad.eventos.EventoMutacion;
 import reservas.models.EstadoReserva;
+import reservas.models.OcupacionRecurso;
 import reservas.models.Reserva;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
 
+/**
+ * Servicio de reservas repartido en particiones independientes.
+ *
+ * Cada recurso se asigna a una partición por el hash de su nombre canónico (sin espacios
+ * alrededor y en minúsculas), y cada partición tiene sus propios mapas, índices, contadores
+ * de ocupación, bloqueo y rango de IDs (ver {@link ParticionReservas}). Crear, cancelar,
+ * filtrar por recurso y consultar la ocupación van a una sola partición; la partición de
+ * un ID se calcula a partir del propio ID. El listado completo une las particiones, cada
+ * una ya ordenada por ID, con una mezcla de k vías.
+ *
+ * El número de particiones es el de núcleos disponibles, o el de la propiedad de sistema
+ * {@code reservas.particiones}.
+ */
 public class ReservaService {
     
-    private Map<Long, Reserva> reservas;
-    private AtomicLong idGenerator;
+    /** Máximo de días que se pueden pedir en una consulta de ocupación */
+    public static final int MAXIMO_DIAS_OCUPACION = 366;
+    
+    private final ParticionReservas[] particiones;
     
     public ReservaService() {
-        this.reservas = new HashMap<>();
-        this.idGenerator = new AtomicLong(1);
+        this(Integer.getInteger("reservas.particiones", Runtime.getRuntime().availableProcessors()));
+    }
+    
+    /**
+     * @param particiones número de particiones (al menos 1)
+     */
+    public ReservaService(int particiones) {
+        int n = Math.max(particiones, 1);
+        this.particiones = new ParticionReservas[n];
+        for (int i = 0; i < n; i++) {
+            this.particiones[i] = new ParticionReservas(i, n);
+        }
+    }
+    
+    /**
+     * @return número de particiones del servicio
+     */
+    public int getParticiones() {
+        return particiones.length;
     }
     
     /**
-     * Obtiene todas las reservas confirmadas
+     * Obtiene todas las reservas confirmadas, en orden de ID
      * @return lista de reservas
      */
     public List<Reserva> obtenerTodasLasReservas() {
-        return reservas.values().stream()
-                .filter(r -> r.getEstado() == EstadoReserva.CONFIRMADA)
-                .collect(Collectors.toList());
+        List<List<Reserva>> porParticion = new ArrayList<>(particiones.length);
+        for (ParticionReservas particion : particiones) {
+            porParticion.add(particion.confirmadas());
+        }
+        return mezclarPorId(porParticion);
     }
     
     /**
      * Obtiene reservas filtradas por recurso
      * @param recurso nombre del recurso
-     * @return lista de reservas del recurso
+     * @return lista de reservas del recurso, en orden de ID
      */
     public List<Reserva> obtenerReservasPorRecurso(String recurso) {
-        return reservas.values().stream()
-                .filter(r -> r.getEstado() == EstadoReserva.CONFIRMADA)
-                .filter(r -> r.getRecurso().equalsIgnoreCase(recurso))
-                .collect(Collectors.toList());
+        return particionDeRecurso(recurso).confirmadasDeRecurso(recurso);
     }
     
     /**
@@ -47,13 +79,37 @@ public class ReservaService {
      * @return Optional con la reserva si existe
      */
     public Optional<Reserva> obtenerReservaPorId(Long id) {
-        Reserva reserva = reservas.get(id);
+        if (id == null || id < 1) {
+            return Optional.empty();
+        }
+        Reserva reserva = particionDeId(id).obtener(id);
         if (reserva != null && reserva.getEstado() == EstadoReserva.CONFIRMADA) {
             return Optional.of(reserva);
         }
         return Optional.empty();
     }
     
+    /**
+     * Obtiene la ocupación de un recurso día a día (minutos reservados y número de reservas
+     * confirmadas). Se calcula con contadores que se mantienen al crear y cancelar
+     * reservas, en O(días del rango) y sin recorrer las reservas.
+     * @param recurso nombre del recurso (sin distinguir mayúsculas)
+     * @param desde primer día (incluido)
+     * @param hasta último día (incluido)
+     * @return ocupación por día y totales del rango
+     * @throws IllegalArgumentException si el rango es inválido o supera MAXIMO_DIAS_OCUPACION
+     */
+    public OcupacionRecurso obtenerOcupacion(String recurso, LocalDate desde, LocalDate hasta) {
+        if (hasta.isBefore(desde)) {
+            throw new IllegalArgumentException("La fecha 'hasta' no puede ser anterior a 'desde'");
+        }
+        if (hasta.toEpochDay() - desde.toEpochDay() >= MAXIMO_DIAS_OCUPACION) {
+            throw new IllegalArgumentException("El rango no puede superar " + MAXIMO_DIAS_OCUPACION + " días");
+        }
+        
+        return new OcupacionRecurso(recurso, desde, hasta, particionDeRecurso(recurso).ocupacion(recurso, desde, hasta));
+    }
+    
     /**
      * Crea una nueva reserva validando conflictos y fechas
      * @param reserva la reserva a crear
@@ -61,6 +117,18 @@ public class ReservaService {
      * @throws IllegalArgumentException si hay conflictos o validaciones fallidas
      */
     public Reserva crearReserva(Reserva reserva) {
+        EventoMutacion evento = EventoMutacion.iniciar("reservas", "crear");
+        try {
+            Reserva creada = registrarReserva(reserva);
+            evento.terminar(String.valueOf(creada.getId()), true);
+            return creada;
+        } catch (RuntimeException e) {
+            evento.terminar(null, false);
+            throw e;
+        }
+    }
+    
+    private Reserva registrarReserva(Reserva reserva) {
         // Validar campos requeridos
         validarCamposRequeridos(reserva);
         
@@ -70,10 +138,9 @@ public class ReservaService {
         // Validar que la hora de fin sea posterior a la hora de inicio
         validarRangoHorario(reserva.getHoraInicio(), reserva.getHoraFin());
         
-        // Detectar conflictos de horario
-        Optional<Reserva> conflicto = detectarConflicto(reserva);
-        if (conflicto.isPresent()) {
-            Reserva reservaConflictiva = conflicto.get();
+        // Detectar conflictos de horario y guardar (ID y estado), de forma atómica en la partición
+        Reserva reservaConflictiva = particionDeRecurso(reserva.getRecurso()).crear(reserva);
+        if (reservaConflictiva != null) {
             throw new ConflictException(
                 "Conflicto de horario",
                 String.format("La sala ya está reservada de %s a %s",
@@ -82,14 +149,6 @@ public class ReservaService {
             );
         }
         
-        // Asignar ID y estado
-        Long nuevoId = idGenerator.getAndIncrement();
-        reserva.setId(nuevoId);
-        reserva.setEstado(EstadoReserva.CONFIRMADA);
-        
-        // Guardar reserva
-        reservas.put(nuevoId, reserva);
-        
         return reserva;
     }
     
@@ -100,13 +159,26 @@ public class ReservaService {
      * @throws IllegalArgumentException si la reserva no existe
      */
     public Reserva cancelarReserva(Long id) {
-        Reserva reserva = reservas.get(id);
+        EventoMutacion evento = EventoMutacion.iniciar("reservas", "cancelar");
+        try {
+            Reserva cancelada = cancelar(id);
+            evento.terminar(String.valueOf(id), true);
+            return cancelada;
+        } catch (RuntimeException e) {
+            evento.terminar(String.valueOf(id), false);
+            throw e;
+        }
+    }
+    
+    private Reserva cancelar(Long id) {
+        // La partición comprueba y cambia el estado de forma atómica: dos cancelaciones
+        // simultáneas no deben restar dos veces la reserva de la ocupación
+        Reserva reserva = id == null || id < 1 ? null : particionDeId(id).cancelar(id);
         
-        if (reserva == null || reserva.getEstado() == EstadoReserva.CANCELADA) {
+        if (reserva == null) {
             throw new IllegalArgumentException("Reserva no encontrada con ID: " + id);
         }
         
-        reserva.setEstado(EstadoReserva.CANCELADA);
         return reserva;
     }
     
@@ -166,16 +238,52 @@ public class ReservaService {
         }
     }
     
+    private ParticionReservas particionDeRecurso(String recurso) {
+        return particiones[ParticionReservas.particionDeRecurso(recurso, particiones.length)];
+    }
+    
+    private ParticionReservas particionDeId(long id) {
+        return particiones[ParticionReservas.particionDeId(id, particiones.length)];
+    }
+    
+    /**
+     * Mezcla de k vías de listas ordenadas por ID: un montículo guarda la posición actual
+     * de cada lista y en cada paso se toma la de menor ID. Cuesta O(total · log k).
+     * @param listas una lista por partición, cada una en orden de ID creciente
+     * @return todas las reservas en orden de ID creciente
+     */
+    static List<Reserva> mezclarPorId(List<List<Reserva>> listas) {
+        if (listas.size() == 1) {
+            return listas.get(0);
+        }
+        
+        int total = 0;
+        PriorityQueue<int[]> cabezas = new PriorityQueue<>(
+                Comparator.comparingLong((int[] c) -> listas.get(c[0]).get(c[1]).getId()));
+        for (int i = 0; i < listas.size(); i++) {
+            total += listas.get(i).size();
+            if (!listas.get(i).isEmpty()) {
+                cabezas.add(new int[] {i, 0});
+            }
+        }
+        
+        List<Reserva> resultado = new ArrayList<>(total);
+        while (!cabezas.isEmpty()) {
+            int[] cabeza = cabezas.poll();
+            List<Reserva> lista = listas.get(cabeza[0]);
+            resultado.add(lista.get(cabeza[1]));
+            if (++cabeza[1] < lista.size()) {
+                cabezas.add(cabeza);
+            }
+        }
+        return resultado;
+    }
+    
     /**
-     * Detecta si hay conflicto de horario con reservas existentes
-     * @param nuevaReserva la reserva a verificar
-     * @return Optional con la reserva conflictiva si existe
+     * @return duración de una reserva en minutos
      */
-    private Optional<Reserva> detectarConflicto(Reserva nuevaReserva) {
-        return reservas.values().stream()
-                .filter(r -> r.getEstado() == EstadoReserva.CONFIRMADA)
-                .filter(r -> nuevaReserva.seSolapaCon(r))
-                .findFirst();
+    static long minutos(Reserva reserva) {
+        return Duration.between(reserva.getHoraInicio(), reserva.getHoraFin()).toMinutes();
     }
     
     /**
@@ -0,0 +1,178 @@
+package servidor;
+
+import biblioteca.BibliotecaAPI;
+import observabilidad.ObservabilidadAPI;
+import reservas.ReservaAPI;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static spark.Spark.*;
+
+/**
+ * Servidor que monta varias APIs (biblioteca, reservas y administración) en una sola instancia de Spark,
+ * cada una bajo su propio prefijo. Así comparten JVM, Jetty y calentamiento del JIT.
+ *
+ * Configuración (propiedad de sistema o variable de entorno equivalente):
+ *   servidor.puerto       puerto HTTP (SERVIDOR_PUERTO, por defecto 4567)
+ *   servidor.servicios    APIs habilitadas separadas por coma (SERVIDOR_SERVICIOS, por defecto "biblioteca,reservas";
+ *                         la de administración, "admin", no tiene autenticación y hay que habilitarla explícitamente)
+ *   biblioteca.prefijo    prefijo de la API de biblioteca (BIBLIOTECA_PREFIJO, por defecto "/biblioteca")
+ *   reservas.prefijo      prefijo de la API de reservas (RESERVAS_PREFIJO, por defecto "/reservas")
+ *   admin.prefijo         prefijo de la API de administración (ADMIN_PREFIJO, por defecto "/admin")
+ *   servidor.jfr.directorio directorio de los volcados de JFR (solo propiedad de sistema, por defecto "jfr")
+ *   servidor.jfr.maximoArchivos volcados que se conservan; los más antiguos se borran (solo propiedad de sistema, por defecto 5)
+ *   admin.soloLocal       si es "true", la API de administración solo atiende a clientes locales (solo propiedad de sistema, por defecto true)
+ *   servidor.entrenamiento si es "true", arranca, ejercita las rutas y termina (usado para generar el archivo CDS)
+ */
+public class ServidorUnificado {
+
+    private static final String SERVICIO_BIBLIOTECA = "biblioteca";
+    private static final String SERVICIO_RESERVAS = "reservas";
+    private static final String SERVICIO_ADMIN = "admin";
+
+    private static final String NO_ENCONTRADA = "{\"error\":\"Ruta no encontrada\"}";
+    private static final String ERROR_INTERNO = "{\"error\":\"Error interno del servidor\"}";
+
+    public static void main(String[] args) {
+        long inicioMain = System.currentTimeMillis();
+        boolean entrenamiento = Boolean.parseBoolean(leerConfiguracion("servidor.entrenamiento", "false"));
+
+        // En modo entrenamiento se usa un puerto libre cualquiera
+        port(entrenamiento ? 0 : Integer.parseInt(leerConfiguracion("servidor.puerto", "4567")));
+
+        Set<String> servicios = serviciosHabilitados();
+        String prefijoBiblioteca = leerConfiguracion("biblioteca.prefijo", "/" + SERVICIO_BIBLIOTECA);
+        String prefijoReservas = leerConfiguracion("reservas.prefijo", "/" + SERVICIO_RESERVAS);
+        String prefijoAdmin = leerConfiguracion("admin.prefijo", "/" + SERVICIO_ADMIN);
+
+        if (servicios.contains(SERVICIO_BIBLIOTECA)) {
+            BibliotecaAPI.registrarRutas(prefijoBiblioteca);
+        }
+        if (servicios.contains(SERVICIO_RESERVAS)) {
+            ReservaAPI.registrarRutas(prefijoReservas);
+        }
+        if (servicios.contains(SERVICIO_ADMIN)) {
+            ObservabilidadAPI.registrarRutas(prefijoAdmin);
+        }
+
+        configurarManejoErrores();
+        medirPrimeraRespuesta();
+
+        awaitInitialization();
+        long arranque = System.currentTimeMillis() - inicioMain;
+
+        System.out.println("Servidor unificado iniciado en http://localhost:" + port() + " en " + arranque + " ms");
+        if (servicios.contains(SERVICIO_BIBLIOTECA)) {
+            System.out.println("  Biblioteca: " + prefijoBiblioteca + "/libros");
+        }
+        if (servicios.contains(SERVICIO_RESERVAS)) {
+            System.out.println("  Reservas:   " + prefijoReservas + "/reservas");
+        }
+        if (servicios.contains(SERVICIO_ADMIN)) {
+            System.out.println("  Admin:      " + prefijoAdmin + "/jfr");
+        }
+
+        if (entrenamiento) {
+            ejercitarRutas(servicios, prefijoBiblioteca, prefijoReservas);
+            stop();
+            awaitStop();
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Registra los manejadores globales de errores. Son comunes a todas las APIs montadas.
+     */
+    private static void configurarManejoErrores() {
+        // Manejo de rutas no encontradas
+        notFound((req, res) -> {
+            res.type("application/json");
+            return NO_ENCONTRADA;
+        });
+
+        // Manejo de errores internos
+        internalServerError((req, res) -> {
+            res.type("application/json");
+            return ERROR_INTERNO;
+        });
+    }
+
+    /**
+     * Registra un filtro que informa, una única vez, el tiempo desde el arranque de la JVM
+     * hasta la primera respuesta servida.
+     */
+    private static void medirPrimeraRespuesta() {
+        AtomicBoolean medido = new AtomicBoolean(false);
+        afterAfter((req, res) -> {
+            if (!medido.get() && medido.compareAndSet(false, true)) {
+                long desdeJvm = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+                System.out.println("Primera respuesta servida " + desdeJvm + " ms después del arranque de la JVM ("
+                        + req.requestMethod() + " " + req.pathInfo() + ")");
+            }
+        });
+    }
+
+    /**
+     * Hace peticiones a las rutas montadas para cargar las clases que usa una petición real.
+     * Se usa al generar el archivo de Class Data Sharing.
+     */
+    private static void ejercitarRutas(Set<String> servicios, String prefijoBiblioteca, String prefijoReservas) {
+        String base = "http://localhost:" + port();
+        if (servicios.contains(SERVICIO_BIBLIOTECA)) {
+            solicitar(base + prefijoBiblioteca + "/libros");
+            solicitar(base + prefijoBiblioteca + "/libros/buscar?q=java");
+            solicitar(base + prefijoBiblioteca + "/libros/978-0134685991");
+        }
+        if (servicios.contains(SERVICIO_RESERVAS)) {
+            solicitar(base + prefijoReservas + "/reservas");
+            solicitar(base + prefijoReservas + "/reservas/1");
+        }
+        solicitar(base + "/ruta-inexistente");
+    }
+
+    private static void solicitar(String url) {
+        try {
+            HttpURLConnection conexion = (HttpURLConnection) new URL(url).openConnection();
+            int estado = conexion.getResponseCode();
+            try (InputStream cuerpo = estado < 400 ? conexion.getInputStream() : conexion.getErrorStream()) {
+                if (cuerpo != null) {
+                    cuerpo.readAllBytes();
+                }
+            }
+            System.out.println("  " + estado + " " + url);
+        } catch (IOException e) {
+            System.out.println("  Error solicitando " + url + ": " + e.getMessage());
+        }
+    }
+
+    private static Set<String> serviciosHabilitados() {
+        // La API de administración no tiene autenticación: solo se monta si se pide
+        String valor = leerConfiguracion("servidor.servicios", SERVICIO_BIBLIOTECA + "," + SERVICIO_RESERVAS);
+        return Arrays.stream(valor.split(","))
+                .map(String::trim)
+                .map(String::toLowerCase)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Lee una opción de configuración: primero la propiedad de sistema y luego la variable
+     * de entorno equivalente (mayúsculas y '_' en lugar de '.').
+     */
+    static String leerConfiguracion(String clave, String valorPorDefecto) {
+        String valor = System.getProperty(clave);
+        if (valor == null) {
+            valor = System.getenv(clave.toUpperCase().replace('.', '_'));
+        }
+        return valor != null && !valor.isEmpty() ? valor : valorPorDefecto;
+    }
+}
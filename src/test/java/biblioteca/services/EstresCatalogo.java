@@ -0,0 +1,395 @@
+package biblioteca.services;
+
+import biblioteca.models.Libro;
+import biblioteca.models.OrdenLibros;
+import biblioteca.models.Sugerencia;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Prueba de estrés del catálogo concurrente, con los dos motores de almacenamiento
+ * (memoria y columnar). Comprueba:
+ * <ul>
+ *   <li>Altas atómicas: varios hilos crean a la vez los mismos ISBN y cada uno se crea
+ *       exactamente una vez, con los datos del hilo que lo consiguió.</li>
+ *   <li>Índices coherentes: tras altas, modificaciones, bajas y cargas masivas (pequeñas,
+ *       aplicadas en el sitio, y grandes, que reconstruyen el catálogo) concurrentes, con
+ *       lecturas en paralelo que no deben fallar, cada índice devuelve lo mismo que un
+ *       recorrido completo del almacén y el listado por título está ordenado.</li>
+ *   <li>Rendimiento de lectura: lecturas por segundo con 1 hilo y con varios, primero solo
+ *       con lectores (la escala de las lecturas) y después con un hilo que escribe a la vez
+ *       (lecturas con escrituras concurrentes). Solo se informa; la escala depende de los
+ *       núcleos de la máquina.</li>
+ * </ul>
+ *
+ * Las lecturas son débilmente consistentes (como las de ConcurrentHashMap): mientras hay
+ * escrituras una consulta puede reflejar unas sí y otras no, así que durante la prueba
+ * solo se exige que no fallen; la coherencia completa se comprueba con el catálogo quieto.
+ *
+ * No es un test de Surefire: se ejecuta con {@code mvn -Pestres test} (o con
+ * {@code java biblioteca.services.EstresCatalogo} y las clases de test en el classpath) y
+ * termina con código 1 si alguna comprobación falla. Propiedades: {@code estres.hilos}
+ * (por defecto, el máximo entre 4 y los núcleos) y {@code estres.segundos} (duración de
+ * cada fase con tiempo, por defecto 3).
+ */
+public class EstresCatalogo {
+
+    private static final String[] PALABRAS = {"abeto", "boj", "cedro", "durazno", "encina", "fresno", "granado", "haya"};
+    private static final int ALTAS = 2_000;
+    private static final int CLAVES_MEZCLA = 500;
+    private static final int LIBROS_LECTURA = 20_000;
+
+    private static final int HILOS = Integer.getInteger("estres.hilos", Math.max(4, Runtime.getRuntime().availableProcessors()));
+    private static final int SEGUNDOS = Integer.getInteger("estres.segundos", 3);
+
+    private static final List<String> errores = Collections.synchronizedList(new ArrayList<>());
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("Estrés del catálogo: " + HILOS + " hilos, " + Runtime.getRuntime().availableProcessors()
+                + " núcleos disponibles");
+
+        probarMotor("memoria", TablaLibros::new);
+        probarMotor("columnar", AlmacenColumnar::new);
+
+        if (errores.isEmpty()) {
+            System.out.println("Todas las comprobaciones pasaron");
+            return;
+        }
+        System.out.println(errores.size() + " comprobaciones fallaron:");
+        synchronized (errores) {
+            errores.stream().limit(50).forEach(error -> System.out.println("  " + error));
+        }
+        System.exit(1);
+    }
+
+    private static void probarMotor(String nombre, Supplier<AlmacenLibros> motor) throws Exception {
+        System.out.println("== Motor " + nombre);
+        altasAtomicas(nombre, new BibliotecaService(motor.get()));
+        indicesCoherentes(nombre, new BibliotecaService(motor.get()));
+        rendimientoLecturas(nombre, new BibliotecaService(motor.get()));
+    }
+
+    /**
+     * Todos los hilos intentan crear los mismos ISBN, cada uno en un orden distinto
+     */
+    private static void altasAtomicas(String motor, BibliotecaService servicio) throws Exception {
+        AtomicIntegerArray ganador = new AtomicIntegerArray(ALTAS);
+        for (int i = 0; i < ALTAS; i++) {
+            ganador.set(i, -1);
+        }
+        AtomicInteger creados = new AtomicInteger();
+        AtomicInteger rechazados = new AtomicInteger();
+
+        enParalelo(HILOS, hilo -> {
+            List<Integer> orden = new ArrayList<>(ALTAS);
+            for (int i = 0; i < ALTAS; i++) {
+                orden.add(i);
+            }
+            Collections.shuffle(orden, ThreadLocalRandom.current());
+
+            for (int i : orden) {
+                try {
+                    servicio.crearLibro(new Libro(isbn(i), "Estres libro " + i + " hilo " + hilo, "Escritor " + hilo, 2000));
+                    creados.incrementAndGet();
+                    if (!ganador.compareAndSet(i, -1, hilo)) {
+                        errores.add(motor + ": el ISBN " + isbn(i) + " se creó dos veces");
+                    }
+                } catch (IllegalArgumentException e) {
+                    rechazados.incrementAndGet();
+                }
+            }
+        });
+
+        comprobar(creados.get() == ALTAS, motor + ": se crearon " + creados.get() + " libros, se esperaban " + ALTAS);
+        comprobar(rechazados.get() == ALTAS * (HILOS - 1), motor + ": " + rechazados.get() + " altas rechazadas, se esperaban "
+                + ALTAS * (HILOS - 1));
+        for (int i = 0; i < ALTAS; i++) {
+            String esperado = "Estres libro " + i + " hilo " + ganador.get(i);
+            Libro libro = servicio.obtenerLibroPorIsbn(isbn(i)).orElse(null);
+            comprobar(libro != null && libro.getTitulo().equals(esperado),
+                    motor + ": el ISBN " + isbn(i) + " no guarda los datos de su alta (" + (libro == null ? null : libro.getTitulo()) + ")");
+            comprobar(servicio.buscarLibrosPorTitulo(esperado).size() == 1,
+                    motor + ": el índice de títulos no tiene exactamente una entrada para " + esperado);
+        }
+        int total = servicio.buscarLibros("estres", 0, 1).getTotal();
+        comprobar(total == ALTAS, motor + ": la búsqueda de texto completo encuentra " + total + " libros, se esperaban " + ALTAS);
+
+        System.out.println("Altas atómicas: " + creados.get() + " creados y " + rechazados.get() + " rechazados por duplicados");
+    }
+
+    /**
+     * Altas, modificaciones y bajas aleatorias sobre pocas claves, con lecturas concurrentes;
+     * después, cada índice debe coincidir con un recorrido del almacén
+     */
+    private static void indicesCoherentes(String motor, BibliotecaService servicio) throws Exception {
+        AtomicBoolean parar = new AtomicBoolean();
+        LongAdder escrituras = new LongAdder();
+        LongAdder lecturas = new LongAdder();
+        int escritores = Math.max(HILOS / 2, 1);
+
+        Thread temporizador = new Thread(() -> {
+            try {
+                Thread.sleep(SEGUNDOS * 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            parar.set(true);
+        });
+        temporizador.start();
+
+        enParalelo(HILOS, hilo -> {
+            ThreadLocalRandom azar = ThreadLocalRandom.current();
+            while (!parar.get()) {
+                if (hilo < escritores) {
+                    escrituraAleatoria(servicio, azar);
+                    escrituras.increment();
+                } else {
+                    lecturaAleatoria(motor, servicio, azar);
+                    lecturas.increment();
+                }
+            }
+        });
+        temporizador.join();
+
+        List<Libro> todos = servicio.obtenerTodosLosLibros();
+        for (String palabra : PALABRAS) {
+            Set<String> contienen = new HashSet<>();
+            Set<String> empiezan = new HashSet<>();
+            for (Libro libro : todos) {
+                String titulo = libro.getTitulo().toLowerCase(Locale.ROOT);
+                if (titulo.contains(palabra)) contienen.add(libro.getIsbn());
+                if (titulo.startsWith(palabra)) empiezan.add(libro.getIsbn());
+            }
+
+            comprobar(isbns(servicio.buscarLibrosPorTitulo(palabra)).equals(contienen),
+                    motor + ": el índice de trigramas no coincide con el almacén para '" + palabra + "'");
+            int total = servicio.buscarLibros(palabra, 0, 1).getTotal();
+            comprobar(total == contienen.size(),
+                    motor + ": el índice de texto completo da " + total + " libros para '" + palabra + "', el almacén " + contienen.size());
+
+            Set<String> sugeridos = new HashSet<>();
+            for (Sugerencia sugerencia : servicio.autocompletar(palabra, Integer.MAX_VALUE)) {
+                if ("titulo".equals(sugerencia.getTipo())) sugeridos.add(sugerencia.getIsbn());
+            }
+            comprobar(sugeridos.equals(empiezan), motor + ": el índice de prefijos no coincide con el almacén para '" + palabra + "'");
+        }
+
+        int desde = 1950;
+        int hasta = 1990;
+        Set<String> enRango = new HashSet<>();
+        for (Libro libro : todos) {
+            if (libro.getAnio() >= desde && libro.getAnio() <= hasta) enRango.add(libro.getIsbn());
+        }
+        comprobar(isbns(servicio.obtenerLibros(null, desde, hasta, OrdenLibros.ANIO, 0, Integer.MAX_VALUE)).equals(enRango),
+                motor + ": el índice de años no coincide con el almacén");
+        List<Libro> porTitulo = servicio.obtenerLibros(null, Integer.MIN_VALUE, Integer.MAX_VALUE, OrdenLibros.TITULO, 0, Integer.MAX_VALUE);
+        comprobar(porTitulo.size() == todos.size() && isbns(porTitulo).equals(isbns(todos)),
+                motor + ": el listado por título tiene " + porTitulo.size() + " libros, el almacén " + todos.size());
+        for (int i = 1; i < porTitulo.size(); i++) {
+            String anterior = IndiceTrigramas.normalizar(porTitulo.get(i - 1).getTitulo());
+            if (anterior.compareTo(IndiceTrigramas.normalizar(porTitulo.get(i).getTitulo())) > 0) {
+                errores.add(motor + ": el listado por título no está ordenado en la posición " + i);
+                break;
+            }
+        }
+
+        System.out.println("Índices coherentes: " + escrituras.sum() + " escrituras y " + lecturas.sum()
+                + " lecturas concurrentes, " + todos.size() + " libros al final");
+    }
+
+    private static void escrituraAleatoria(BibliotecaService servicio, ThreadLocalRandom azar) {
+        if (azar.nextInt(200) == 0) {
+            cargaAleatoria(servicio, azar);
+            return;
+        }
+        int i = azar.nextInt(CLAVES_MEZCLA);
+        String titulo = PALABRAS[azar.nextInt(PALABRAS.length)] + " estres " + azar.nextInt(1000);
+        int anio = 1900 + azar.nextInt(120);
+        try {
+            switch (azar.nextInt(3)) {
+                case 0:
+                    servicio.crearLibro(new Libro(isbn(i), titulo, "Escritor " + azar.nextInt(10), anio));
+                    break;
+                case 1:
+                    servicio.actualizarLibro(isbn(i), new Libro(null, titulo, "Escritor " + azar.nextInt(10), anio));
+                    break;
+                default:
+                    servicio.eliminarLibro(isbn(i));
+            }
+        } catch (IllegalArgumentException e) {
+            // Duplicado o inexistente: esperado con claves aleatorias
+        }
+    }
+
+    /**
+     * Carga masiva de claves aleatorias: unas pocas (se aplican sobre el catálogo publicado)
+     * o casi todas (construyen un catálogo nuevo)
+     */
+    private static void cargaAleatoria(BibliotecaService servicio, ThreadLocalRandom azar) {
+        int cantidad = azar.nextBoolean() ? 5 : CLAVES_MEZCLA;
+        StringBuilder lineas = new StringBuilder();
+        for (int n = 0; n < cantidad; n++) {
+            lineas.append("{\"isbn\":\"").append(isbn(azar.nextInt(CLAVES_MEZCLA)))
+                    .append("\",\"titulo\":\"").append(PALABRAS[azar.nextInt(PALABRAS.length)]).append(" carga ").append(n)
+                    .append("\",\"autor\":\"Escritor ").append(azar.nextInt(10))
+                    .append("\",\"anio\":").append(1900 + azar.nextInt(120)).append("}\n");
+        }
+        servicio.cargarLibros(lineas.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void lecturaAleatoria(String motor, BibliotecaService servicio, ThreadLocalRandom azar) {
+        String palabra = PALABRAS[azar.nextInt(PALABRAS.length)];
+        List<Libro> libros;
+        switch (azar.nextInt(4)) {
+            case 0:
+                libros = servicio.buscarLibrosPorTitulo(palabra);
+                break;
+            case 1:
+                libros = servicio.buscarLibros(palabra, 0, 20).getLibros();
+                break;
+            case 2:
+                int desde = 1900 + azar.nextInt(120);
+                libros = servicio.obtenerLibros(null, desde, desde + 10, OrdenLibros.TITULO, 0, 50);
+                break;
+            default:
+                libros = servicio.obtenerLibros(null, Integer.MIN_VALUE, Integer.MAX_VALUE, null, 0, 100);
+        }
+        Set<String> vistos = new HashSet<>();
+        for (Libro libro : libros) {
+            if (libro == null || !vistos.add(libro.getIsbn())) {
+                errores.add(motor + ": una lectura concurrente devolvió un libro nulo o repetido");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Lecturas por segundo con 1 hilo y con {@link #HILOS}: solo lecturas y con un escritor
+     * en paralelo, como dos medidas separadas
+     */
+    private static void rendimientoLecturas(String motor, BibliotecaService servicio) throws Exception {
+        for (int i = 0; i < LIBROS_LECTURA; i++) {
+            servicio.crearLibro(new Libro(isbn(i), PALABRAS[i % PALABRAS.length] + " lectura " + i, "Escritor " + i % 100, 1900 + i % 120));
+        }
+
+        for (boolean conEscritor : new boolean[] {false, true}) {
+            double uno = lecturasPorSegundo(servicio, 1, conEscritor);
+            double varios = lecturasPorSegundo(servicio, HILOS, conEscritor);
+            System.out.printf(Locale.ROOT, "Lecturas %s: %.0f/s con 1 hilo, %.0f/s con %d hilos (x%.2f)%n",
+                    conEscritor ? "con un escritor" : "solas", uno, varios, HILOS, varios / uno);
+        }
+    }
+
+    /**
+     * @param lectores hilos que leen
+     * @param conEscritor si es true, un hilo más actualiza libros durante la medida
+     */
+    private static double lecturasPorSegundo(BibliotecaService servicio, int lectores, boolean conEscritor) throws Exception {
+        AtomicBoolean parar = new AtomicBoolean();
+        LongAdder lecturas = new LongAdder();
+        long[] inicio = new long[1];
+
+        Thread escritor = new Thread(() -> {
+            ThreadLocalRandom azar = ThreadLocalRandom.current();
+            while (conEscritor && !parar.get()) {
+                int i = azar.nextInt(LIBROS_LECTURA);
+                servicio.actualizarLibro(isbn(i), new Libro(null, PALABRAS[i % PALABRAS.length] + " lectura " + i,
+                        "Escritor " + i % 100, 1900 + azar.nextInt(120)));
+            }
+        });
+        Thread temporizador = new Thread(() -> {
+            inicio[0] = System.nanoTime();
+            try {
+                Thread.sleep(SEGUNDOS * 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            parar.set(true);
+        });
+        escritor.start();
+        temporizador.start();
+
+        enParalelo(lectores, hilo -> {
+            ThreadLocalRandom azar = ThreadLocalRandom.current();
+            while (!parar.get()) {
+                int i = azar.nextInt(LIBROS_LECTURA);
+                servicio.obtenerLibroPorIsbn(isbn(i));
+                servicio.autocompletar(PALABRAS[i % PALABRAS.length] + " lectura " + i / 10, 10);
+                servicio.obtenerLibros(null, 1900 + i % 120, 1900 + i % 120, OrdenLibros.ANIO, 0, 20);
+                lecturas.add(3);
+            }
+        });
+        temporizador.join();
+        escritor.join();
+        return lecturas.sum() / ((System.nanoTime() - inicio[0]) / 1e9);
+    }
+
+    private interface Tarea {
+        void ejecutar(int hilo) throws Exception;
+    }
+
+    /**
+     * Ejecuta la tarea en varios hilos que empiezan a la vez y espera a que terminen.
+     * Una excepción inesperada en un hilo cuenta como comprobación fallida.
+     */
+    private static void enParalelo(int hilos, Tarea tarea) throws InterruptedException {
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> lista = new ArrayList<>(hilos);
+        for (int h = 0; h < hilos; h++) {
+            int hilo = h;
+            Thread t = new Thread(() -> {
+                try {
+                    salida.await();
+                    tarea.ejecutar(hilo);
+                } catch (Exception e) {
+                    errores.add("Excepción en el hilo " + hilo + ": " + e);
+                }
+            });
+            t.start();
+            lista.add(t);
+        }
+        salida.countDown();
+        for (Thread t : lista) {
+            t.join();
+        }
+    }
+
+    private static void comprobar(boolean condicion, String mensaje) {
+        if (!condicion) {
+            errores.add(mensaje);
+        }
+    }
+
+    private static Set<String> isbns(List<Libro> libros) {
+        Set<String> resultado = new HashSet<>();
+        for (Libro libro : libros) {
+            resultado.add(libro.getIsbn());
+        }
+        return resultado;
+    }
+
+    /**
+     * @return un ISBN-13 válido con prefijo 979, distinto para cada número
+     */
+    private static String isbn(int numero) {
+        String base = "979" + (100_000_000 + numero);
+        int suma = 0;
+        for (int i = 0; i < base.length(); i++) {
+            suma += (base.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return base + (10 - suma % 10) % 10;
+    }
+}
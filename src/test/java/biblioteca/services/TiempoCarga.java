@@ -0,0 +1,141 @@
+package biblioteca.services;
+
+import biblioteca.models.ResultadoCarga;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Mide la duración de la carga masiva según el número de hilos, con los dos motores de
+ * almacenamiento:
+ * <ul>
+ *   <li>Carga grande: tantos libros como tiene el catálogo (la mitad nuevos), que construye
+ *       un catálogo nuevo.</li>
+ *   <li>Carga pequeña: el 1% del catálogo, aplicada sobre el catálogo publicado y, para
+ *       comparar, forzando la reconstrucción ({@code biblioteca.carga.maximoEnSitio=0}).</li>
+ * </ul>
+ * Cada medida es la mejor de varias repeticiones, cada una sobre un servicio nuevo. También
+ * comprueba que cada carga deja el número de libros esperado.
+ *
+ * Como {@link EstresCatalogo}, no es un test de Surefire: se ejecuta con
+ * {@code mvn -Ptiempo-carga test} y termina con código 1 si alguna comprobación falla.
+ * Propiedades: {@code tiempo.libros} (libros del catálogo inicial, por defecto 200.000),
+ * {@code tiempo.hilos} (lista de hilos a probar, por defecto 1, 2, 4... hasta los núcleos)
+ * y {@code tiempo.repeticiones} (por defecto 3).
+ */
+public class TiempoCarga {
+
+    private static final int LIBROS = Integer.getInteger("tiempo.libros", 200_000);
+    private static final int REPETICIONES = Integer.getInteger("tiempo.repeticiones", 3);
+
+    private static final List<String> errores = new ArrayList<>();
+
+    public static void main(String[] args) {
+        int[] hilos = hilosAProbar();
+        System.out.println("Tiempo de carga masiva: catálogo de " + LIBROS + " libros, "
+                + Runtime.getRuntime().availableProcessors() + " núcleos disponibles");
+
+        // El catálogo inicial y las cargas: la grande repite la mitad de los ISBN del catálogo
+        byte[] inicial = lineas(0, LIBROS, "inicial");
+        byte[] grande = lineas(LIBROS / 2, LIBROS, "grande");
+        byte[] pequena = lineas(LIBROS - LIBROS / 200, LIBROS / 100, "pequeña");
+
+        medirMotor("memoria", TablaLibros::new, hilos, inicial, grande, pequena);
+        medirMotor("columnar", AlmacenColumnar::new, hilos, inicial, grande, pequena);
+
+        if (errores.isEmpty()) {
+            System.out.println("Todas las comprobaciones pasaron");
+            return;
+        }
+        System.out.println(errores.size() + " comprobaciones fallaron:");
+        errores.forEach(error -> System.out.println("  " + error));
+        System.exit(1);
+    }
+
+    private static void medirMotor(String nombre, Supplier<AlmacenLibros> motor, int[] hilos,
+                                   byte[] inicial, byte[] grande, byte[] pequena) {
+        System.out.println("== Motor " + nombre);
+        System.out.println("hilos  grande (ms)  pequeña en el sitio (ms)  pequeña reconstruyendo (ms)");
+        long[] base = new long[3];
+        for (int h : hilos) {
+            System.setProperty("biblioteca.carga.hilos", Integer.toString(h));
+            long[] tiempos = {
+                    medir(nombre, motor, inicial, grande, LIBROS + LIBROS / 2, "10"),
+                    medir(nombre, motor, inicial, pequena, LIBROS + LIBROS / 200, "10"),
+                    medir(nombre, motor, inicial, pequena, LIBROS + LIBROS / 200, "0")
+            };
+            if (base[0] == 0) {
+                System.arraycopy(tiempos, 0, base, 0, 3);
+            }
+            System.out.printf(Locale.ROOT, "%5d  %6d (x%.2f)  %15d (x%.2f)  %18d (x%.2f)%n", h,
+                    tiempos[0], (double) base[0] / tiempos[0], tiempos[1], (double) base[1] / tiempos[1],
+                    tiempos[2], (double) base[2] / tiempos[2]);
+        }
+        System.clearProperty("biblioteca.carga.hilos");
+        System.clearProperty("biblioteca.carga.maximoEnSitio");
+    }
+
+    /**
+     * @return la mejor duración en milisegundos de la carga sobre un catálogo recién llenado
+     */
+    private static long medir(String motor, Supplier<AlmacenLibros> almacen, byte[] inicial, byte[] carga,
+                              int totalEsperado, String maximoEnSitio) {
+        long mejor = Long.MAX_VALUE;
+        for (int r = 0; r < REPETICIONES; r++) {
+            System.setProperty("biblioteca.carga.maximoEnSitio", "0");
+            BibliotecaService servicio = new BibliotecaService(almacen.get());
+            servicio.cargarLibros(inicial);
+
+            System.setProperty("biblioteca.carga.maximoEnSitio", maximoEnSitio);
+            ResultadoCarga resultado = servicio.cargarLibros(carga);
+            mejor = Math.min(mejor, resultado.getMilisegundos());
+            // Los 3 libros de ejemplo siguen en el catálogo
+            if (resultado.getTotalLibros() != totalEsperado + 3) {
+                errores.add(motor + ": la carga dejó " + resultado.getTotalLibros() + " libros, se esperaban "
+                        + (totalEsperado + 3));
+            }
+        }
+        return mejor;
+    }
+
+    private static int[] hilosAProbar() {
+        String lista = System.getProperty("tiempo.hilos");
+        if (lista != null && !lista.isEmpty()) {
+            return Arrays.stream(lista.split(",")).mapToInt(h -> Integer.parseInt(h.trim())).toArray();
+        }
+        List<Integer> hilos = new ArrayList<>();
+        for (int h = 1; h < Runtime.getRuntime().availableProcessors(); h *= 2) {
+            hilos.add(h);
+        }
+        hilos.add(Runtime.getRuntime().availableProcessors());
+        return hilos.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return {@code cantidad} libros en JSON Lines a partir del número {@code desde}
+     */
+    private static byte[] lineas(int desde, int cantidad, String etiqueta) {
+        String[] palabras = {"abeto", "boj", "cedro", "durazno", "encina", "fresno", "granado", "haya"};
+        StringBuilder texto = new StringBuilder(cantidad * 100);
+        for (int i = desde; i < desde + cantidad; i++) {
+            texto.append("{\"isbn\":\"").append(isbn(i))
+                    .append("\",\"titulo\":\"").append(palabras[i % palabras.length]).append(' ').append(etiqueta).append(' ').append(i)
+                    .append("\",\"autor\":\"Escritor ").append(i % 1000)
+                    .append("\",\"anio\":").append(1900 + i % 120).append("}\n");
+        }
+        return texto.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String isbn(int numero) {
+        String base = "979" + (100_000_000 + numero);
+        int suma = 0;
+        for (int i = 0; i < base.length(); i++) {
+            suma += (base.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return base + (10 - suma % 10) % 10;
+    }
+}
@@ -0,0 +1,119 @@
+package reservas.services;
+
+import reservas.models.Reserva;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Mide las altas por segundo de {@link ReservaService} según el número de particiones y de
+ * hilos. Cada hilo crea sus reservas sobre sus propios recursos (1.000 por hilo, diez horas
+ * por día), así que no hay conflictos y solo compiten por las particiones.
+ *
+ * Cada medida es la mediana de varias repeticiones, cada una sobre un servicio nuevo; se
+ * muestran también el mínimo y el máximo. Después de cada repetición comprueba que el
+ * listado completo tiene todas las reservas y que sus IDs son únicos y crecientes.
+ *
+ * Como {@code TiempoCarga}, no es un test de Surefire: se ejecuta con
+ * {@code mvn -Prendimiento-reservas test} y termina con código 1 si alguna comprobación
+ * falla. Propiedades: {@code rendimiento.particiones} (por defecto 1,4,16),
+ * {@code rendimiento.hilos} (por defecto 1 y los núcleos disponibles),
+ * {@code rendimiento.reservas} (reservas por hilo, por defecto 100.000) y
+ * {@code rendimiento.repeticiones} (por defecto 5).
+ */
+public class RendimientoParticiones {
+
+    private static final int RESERVAS = Integer.getInteger("rendimiento.reservas", 100_000);
+    private static final int REPETICIONES = Integer.getInteger("rendimiento.repeticiones", 5);
+    private static final int RECURSOS_POR_HILO = 1000;
+    private static final int HORAS_POR_DIA = 10;
+
+    private static final List<String> errores = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] particiones = lista("rendimiento.particiones", new int[] {1, 4, 16});
+        int nucleos = Runtime.getRuntime().availableProcessors();
+        int[] hilos = lista("rendimiento.hilos", nucleos == 1 ? new int[] {1, 4} : new int[] {1, nucleos});
+
+        System.out.println("Altas de reservas: " + RESERVAS + " por hilo, " + REPETICIONES + " repeticiones, "
+                + nucleos + " núcleos disponibles");
+        System.out.println("hilos  particiones  altas/s (mediana)  mínimo   máximo");
+        for (int h : hilos) {
+            for (int p : particiones) {
+                long[] porSegundo = new long[REPETICIONES];
+                for (int r = 0; r < REPETICIONES; r++) {
+                    porSegundo[r] = medir(h, p);
+                }
+                Arrays.sort(porSegundo);
+                System.out.printf(Locale.ROOT, "%5d  %11d  %17d  %7d  %7d%n", h, p, porSegundo[REPETICIONES / 2],
+                        porSegundo[0], porSegundo[REPETICIONES - 1]);
+            }
+        }
+
+        if (errores.isEmpty()) {
+            System.out.println("Todas las comprobaciones pasaron");
+            return;
+        }
+        System.out.println(errores.size() + " comprobaciones fallaron:");
+        errores.forEach(error -> System.out.println("  " + error));
+        System.exit(1);
+    }
+
+    /**
+     * @return altas por segundo con {@code hilos} hilos sobre un servicio nuevo
+     */
+    private static long medir(int hilos, int particiones) throws InterruptedException {
+        ReservaService servicio = new ReservaService(particiones);
+        LocalDate hoy = LocalDate.now();
+        Thread[] trabajadores = new Thread[hilos];
+        for (int t = 0; t < hilos; t++) {
+            int hilo = t;
+            trabajadores[t] = new Thread(() -> {
+                for (int i = 0; i < RESERVAS; i++) {
+                    int turno = i / RECURSOS_POR_HILO;
+                    LocalTime inicio = LocalTime.of(8 + turno % HORAS_POR_DIA, 0);
+                    servicio.crearReserva(new Reserva(null, "Sala " + hilo + "-" + i % RECURSOS_POR_HILO,
+                            hoy.plusDays(turno / HORAS_POR_DIA), inicio, inicio.plusHours(1), "usuario" + hilo));
+                }
+            });
+        }
+
+        long inicio = System.nanoTime();
+        for (Thread trabajador : trabajadores) {
+            trabajador.start();
+        }
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        long nanos = System.nanoTime() - inicio;
+
+        comprobar(servicio, hilos, particiones);
+        return (long) hilos * RESERVAS * 1_000_000_000L / nanos;
+    }
+
+    private static void comprobar(ReservaService servicio, int hilos, int particiones) {
+        List<Reserva> todas = servicio.obtenerTodasLasReservas();
+        String caso = hilos + " hilos, " + particiones + " particiones: ";
+        if (todas.size() != hilos * RESERVAS) {
+            errores.add(caso + "el listado tiene " + todas.size() + " reservas, se esperaban " + hilos * RESERVAS);
+        }
+        for (int i = 1; i < todas.size(); i++) {
+            if (todas.get(i).getId() <= todas.get(i - 1).getId()) {
+                errores.add(caso + "IDs repetidos o desordenados en la posición " + i);
+                return;
+            }
+        }
+    }
+
+    private static int[] lista(String propiedad, int[] porDefecto) {
+        String valor = System.getProperty(propiedad);
+        if (valor == null || valor.isEmpty()) {
+            return porDefecto;
+        }
+        return Arrays.stream(valor.split(",")).mapToInt(v -> Integer.parseInt(v.trim())).toArray();
+    }
+}
@@ -0,0 +1,197 @@
+package servidor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mide el arranque de {@link ServidorUnificado} sin Class Data Sharing, con el archivo CDS
+ * del JDK (lo habitual) y con el archivo AppCDS que genera el perfil {@code cds}.
+ *
+ * Cada repetición lanza una JVM nueva con el JAR empaquetado, espera a que Jetty acepte
+ * conexiones, hace una petición a {@code /biblioteca/libros} y termina el proceso. Por cada
+ * modo informa la mediana y el mínimo de:
+ * <ul>
+ *   <li>Jetty listo: lo que imprime el servidor al arrancar (desde {@code main}).</li>
+ *   <li>Primera respuesta: lo que imprime el servidor al servir la primera petición (desde
+ *       el arranque de la JVM).</li>
+ *   <li>Total: desde que se lanza el proceso hasta recibir la respuesta completa, medido
+ *       aquí; incluye crear la JVM.</li>
+ * </ul>
+ *
+ * Como {@code TiempoCarga}, no es un test de Surefire: se ejecuta al final de
+ * {@code mvn -Pcds package -Darranque.omitir=false}, que le pasa el classpath y el archivo
+ * recién generados, y termina con código 1 si algún arranque falla. Propiedad:
+ * {@code arranque.repeticiones} (por defecto 5).
+ */
+public class TiempoArranque {
+
+    private static final int REPETICIONES = Integer.getInteger("arranque.repeticiones", 5);
+    private static final long ESPERA_MAXIMA_MS = 60_000;
+
+    private static final Pattern LISTO = Pattern.compile("Servidor unificado iniciado .* en (\\d+) ms");
+    private static final Pattern PRIMERA = Pattern.compile("Primera respuesta servida (\\d+) ms");
+
+    /**
+     * @param args classpath del servidor (el JAR y sus dependencias, el mismo con que se
+     *             generó el archivo) y ruta del archivo AppCDS
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Uso: TiempoArranque <classpath> <archivo.jsa>");
+        }
+        String classpath = args[0];
+        String archivo = args[1];
+        if (!Files.exists(Paths.get(archivo))) {
+            System.out.println("No existe el archivo CDS " + archivo + "; generarlo con mvn -Pcds package");
+            System.exit(1);
+        }
+
+        System.out.println("Tiempo de arranque de ServidorUnificado: " + REPETICIONES + " repeticiones por modo, "
+                + Runtime.getRuntime().availableProcessors() + " núcleos disponibles, Java "
+                + System.getProperty("java.version"));
+        System.out.println("modo              Jetty listo (ms)   primera respuesta (ms)   total (ms)   [mediana / mínimo]");
+
+        boolean fallo = false;
+        fallo |= !medir("sin CDS", classpath, "-Xshare:off");
+        fallo |= !medir("CDS del JDK", classpath, null);
+        fallo |= !medir("AppCDS", classpath, "-XX:SharedArchiveFile=" + archivo);
+        if (fallo) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param opcion opción de CDS de la JVM, o null para la configuración por defecto
+     * @return false si algún arranque falló
+     */
+    private static boolean medir(String modo, String classpath, String opcion) throws Exception {
+        long[][] tiempos = new long[3][REPETICIONES];
+        for (int r = 0; r < REPETICIONES; r++) {
+            long[] medida = arrancar(classpath, opcion);
+            if (medida == null) {
+                System.out.println(modo + ": el servidor no respondió");
+                return false;
+            }
+            for (int k = 0; k < 3; k++) {
+                tiempos[k][r] = medida[k];
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-16s  %7d / %-7d  %11d / %-11d  %6d / %d%n", modo,
+                mediana(tiempos[0]), minimo(tiempos[0]), mediana(tiempos[1]), minimo(tiempos[1]),
+                mediana(tiempos[2]), minimo(tiempos[2]));
+        return true;
+    }
+
+    /**
+     * @return Jetty listo, primera respuesta y total en milisegundos, o null si falla
+     */
+    private static long[] arrancar(String classpath, String opcion) throws Exception {
+        int puerto = puertoLibre();
+        List<String> comando = new ArrayList<>();
+        comando.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (opcion != null) {
+            comando.add(opcion);
+        }
+        comando.addAll(Arrays.asList("-Xlog:cds=off", "-Dservidor.puerto=" + puerto, "-cp", classpath,
+                "servidor.ServidorUnificado"));
+
+        long inicio = System.nanoTime();
+        Process proceso = new ProcessBuilder(comando).redirectErrorStream(true).start();
+        BlockingQueue<String> lineas = leerLineas(proceso.getInputStream());
+        try {
+            Matcher listo = esperar(lineas, LISTO);
+            if (listo == null) return null;
+
+            solicitar("http://localhost:" + puerto + "/biblioteca/libros");
+            long total = (System.nanoTime() - inicio) / 1_000_000;
+
+            Matcher primera = esperar(lineas, PRIMERA);
+            if (primera == null) return null;
+            return new long[] {Long.parseLong(listo.group(1)), Long.parseLong(primera.group(1)), total};
+        } finally {
+            proceso.destroy();
+            if (!proceso.waitFor(10, TimeUnit.SECONDS)) {
+                proceso.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Copia la salida del proceso a una cola desde un hilo aparte, para poder esperarla con
+     * un tiempo máximo
+     */
+    private static BlockingQueue<String> leerLineas(InputStream salida) {
+        BlockingQueue<String> lineas = new LinkedBlockingQueue<>();
+        Thread lector = new Thread(() -> {
+            try (BufferedReader lectura = new BufferedReader(new InputStreamReader(salida, StandardCharsets.UTF_8))) {
+                String linea;
+                while ((linea = lectura.readLine()) != null) {
+                    lineas.add(linea);
+                }
+            } catch (IOException e) {
+                // El proceso terminó
+            }
+        });
+        lector.setDaemon(true);
+        lector.start();
+        return lineas;
+    }
+
+    /**
+     * @return la primera línea que coincide con el patrón, o null si no llega a tiempo
+     */
+    private static Matcher esperar(BlockingQueue<String> lineas, Pattern patron) throws InterruptedException {
+        long limite = System.currentTimeMillis() + ESPERA_MAXIMA_MS;
+        while (true) {
+            long restante = limite - System.currentTimeMillis();
+            if (restante <= 0) return null;
+            String linea = lineas.poll(restante, TimeUnit.MILLISECONDS);
+            if (linea == null) return null;
+            Matcher coincidencia = patron.matcher(linea);
+            if (coincidencia.find()) return coincidencia;
+        }
+    }
+
+    private static void solicitar(String url) throws IOException {
+        HttpURLConnection conexion = (HttpURLConnection) new URL(url).openConnection();
+        int estado = conexion.getResponseCode();
+        try (InputStream cuerpo = estado < 400 ? conexion.getInputStream() : conexion.getErrorStream()) {
+            if (cuerpo != null) {
+                cuerpo.readAllBytes();
+            }
+        }
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static long mediana(long[] valores) {
+        long[] ordenados = valores.clone();
+        Arrays.sort(ordenados);
+        return ordenados[ordenados.length / 2];
+    }
+
+    private static long minimo(long[] valores) {
+        return Arrays.stream(valores).min().orElse(0);
+    }
+}